@@ -0,0 +1,113 @@
+package movieRecommender.bench;
+
+import movieRecommender.DatasetGenerator;
+import movieRecommender.UsersList;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BenchmarkData. The datasets the benchmarks run on: "ratings.csv" is the bundled
+ * MovieLens sample, and "synthetic-N" (for example synthetic-1M or synthetic-25M) is a
+ * dataset of N ratings written by DatasetGenerator into a temporary directory. Datasets
+ * are generated and read once per JVM and kept in primitive arrays, so setting up a
+ * benchmark does not measure the parser.
+ */
+final class BenchmarkData {
+    private static final String SYNTHETIC = "synthetic-";
+    private static final long SEED = 1;
+    private static final Map<String, BenchmarkData> CACHE = new HashMap<>();
+
+    final String moviesFile;
+    final String ratingsFile;
+    final int[] userIds;
+    final int[] movieIds;
+    final double[] ratings;
+    final int size;
+
+    /**
+     * Private constructor, use load
+     * @param moviesFile name of the movies file
+     * @param ratingsFile name of the ratings file
+     * @param userIds user id of every rating
+     * @param movieIds movie id of every rating
+     * @param ratings every rating
+     */
+    private BenchmarkData(String moviesFile, String ratingsFile, int[] userIds, int[] movieIds, double[] ratings) {
+        this.moviesFile = moviesFile;
+        this.ratingsFile = ratingsFile;
+        this.userIds = userIds;
+        this.movieIds = movieIds;
+        this.ratings = ratings;
+        this.size = ratings.length;
+    }
+
+    /**
+     * Returns the dataset with the given name, generating it first if it is synthetic
+     * @param dataset "ratings.csv" or "synthetic-" followed by a number of ratings
+     * @return the dataset
+     * @throws IOException if the files can not be written or read
+     */
+    static synchronized BenchmarkData load(String dataset) throws IOException {
+
+        BenchmarkData data = CACHE.get(dataset);
+        if (data != null) {
+            return data;
+        }
+
+        String moviesFile = "movies.csv";
+        String ratingsFile = dataset;
+        if (dataset.startsWith(SYNTHETIC)) {
+            Path dir = Files.createTempDirectory(dataset);
+            dir.toFile().deleteOnExit();
+            DatasetGenerator.generate(dir.toString(), DatasetGenerator.parseCount(dataset.substring(SYNTHETIC.length())), SEED);
+            moviesFile = dir.resolve("movies.csv").toString();
+            ratingsFile = dir.resolve("ratings.csv").toString();
+            dir.resolve("movies.csv").toFile().deleteOnExit();
+            dir.resolve("ratings.csv").toFile().deleteOnExit();
+        }
+
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(ratingsFile))) {
+            reader.readLine(); // header
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        int[] userIds = new int[lines];
+        int[] movieIds = new int[lines];
+        double[] ratings = new double[lines];
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(ratingsFile))) {
+            reader.readLine(); // header
+            for (int i = 0; i < lines; i++) {
+                String[] info = reader.readLine().split(",");
+                userIds[i] = Integer.parseInt(info[0]);
+                movieIds[i] = Integer.parseInt(info[1]);
+                ratings[i] = Double.parseDouble(info[2]);
+            }
+        }
+
+        data = new BenchmarkData(moviesFile, ratingsFile, userIds, movieIds, ratings);
+        CACHE.put(dataset, data);
+        return data;
+    }
+
+    /**
+     * Builds a compacted UsersList from the dataset, the way MovieRecommender.loadData does
+     * @return list of all users
+     */
+    UsersList toUsersList() {
+        UsersList users = new UsersList();
+        for (int i = 0; i < size; i++) {
+            users.insertBuffered(userIds[i], movieIds[i], ratings[i]);
+        }
+        users.compact();
+        return users;
+    }
+}
@@ -0,0 +1,23 @@
+package movieRecommender.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks of this package (or those matching the first argument) with
+ * the GC profiler, which adds the allocation rate and bytes allocated per operation to
+ * the throughput and latency results.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : Benchmarks.class.getPackage().getName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,59 @@
+package movieRecommender.bench;
+
+import movieRecommender.MovieRatingsList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building one user's MovieRatingsList with insertByRating, for a light user
+ * and for heavy users, with ratings in random order on the half-star scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"20", "500", "2000"})
+    public int ratingsPerUser;
+
+    private int[] movieIds;
+    private double[] ratings;
+
+    /**
+     * Draws the ratings of the user
+     */
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(ratingsPerUser);
+        movieIds = new int[ratingsPerUser];
+        ratings = new double[ratingsPerUser];
+        for (int i = 0; i < ratingsPerUser; i++) {
+            movieIds[i] = i + 1;
+            ratings[i] = 0.5 * (1 + random.nextInt(10));
+        }
+    }
+
+    @Benchmark
+    public MovieRatingsList insertByRating() {
+        MovieRatingsList list = new MovieRatingsList();
+        for (int i = 0; i < movieIds.length; i++) {
+            list.insertByRating(movieIds[i], ratings[i]);
+        }
+        return list;
+    }
+}
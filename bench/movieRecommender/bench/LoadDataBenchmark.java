@@ -0,0 +1,60 @@
+package movieRecommender.bench;
+
+import movieRecommender.MovieRecommender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks MovieRecommender.loadData, sequential and with several threads, on the
+ * bundled ratings and on larger synthetic datasets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LoadDataBenchmark {
+
+    @Param({"ratings.csv", "synthetic-1M"})
+    public String dataset;
+
+    private BenchmarkData data;
+
+    /**
+     * Generates the dataset if it is synthetic
+     * @throws IOException if the data can not be written or read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = BenchmarkData.load(dataset);
+    }
+
+    @Benchmark
+    public MovieRecommender loadData() {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData(data.moviesFile, data.ratingsFile);
+        return recommender;
+    }
+
+    @Benchmark
+    public MovieRecommender loadDataParallel() {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData(data.moviesFile, data.ratingsFile,
+                Runtime.getRuntime().availableProcessors());
+        return recommender;
+    }
+}
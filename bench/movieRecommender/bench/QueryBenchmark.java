@@ -0,0 +1,117 @@
+package movieRecommender.bench;
+
+import movieRecommender.MovieRatingNode;
+import movieRecommender.MovieRatingsList;
+import movieRecommender.MovieRecommender;
+import movieRecommender.UserNode;
+import movieRecommender.UsersList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the queries on a loaded model: the similarity of two users, the search for
+ * the most similar user, the worst rated movies of a user and a whole findRecommendations
+ * call. Every invocation picks the next user of a fixed random sequence, so the results
+ * average over light and heavy users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+    private static final int SEQUENCE = 1024;
+
+    @Param({"ratings.csv", "synthetic-1M"})
+    public String dataset;
+
+    private UsersList users;
+    private MovieRecommender recommender;
+    private Path output;
+    private int[] sequence;
+    private int next;
+
+    /**
+     * Loads the dataset into a UsersList and a MovieRecommender and draws the users
+     * @throws IOException if the data can not be written or read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData data = BenchmarkData.load(dataset);
+        users = data.toUsersList();
+
+        recommender = new MovieRecommender();
+        recommender.loadData(data.moviesFile, data.ratingsFile);
+        recommender.setResultCacheSize(0);
+        output = Files.createTempFile("recommendations", ".txt");
+
+        SplittableRandom random = new SplittableRandom(42);
+        sequence = new int[SEQUENCE];
+        for (int i = 0; i < SEQUENCE; i++) {
+            sequence[i] = data.userIds[random.nextInt(data.size)];
+        }
+    }
+
+    /**
+     * Deletes the output file
+     * @throws IOException if the file can not be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    /**
+     * Returns the next user id of the sequence
+     * @return user id
+     */
+    private int nextUser() {
+        int userId = sequence[next];
+        next = (next + 1) % SEQUENCE;
+        return userId;
+    }
+
+    @Benchmark
+    public double computeSimilarity() {
+        UserNode user = users.get(nextUser());
+        UserNode other = users.get(nextUser());
+        return user.getMovieRatings().computeSimilarity(other.getMovieRatings());
+    }
+
+    @Benchmark
+    public UserNode findMostSimilarUser() {
+        return users.findMostSimilarUser(nextUser());
+    }
+
+    @Benchmark
+    public void getNWorstRankedMovies(Blackhole blackhole) {
+        MovieRatingsList worst = users.get(nextUser()).getMovieRatings().getNWorstRankedMovies(10);
+        for (MovieRatingNode node: worst) {
+            blackhole.consume(node.getMovieId());
+        }
+    }
+
+    @Benchmark
+    public void findRecommendations() {
+        recommender.findRecommendations(nextUser(), 10, output.toString());
+    }
+}
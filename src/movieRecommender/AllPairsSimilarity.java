@@ -0,0 +1,203 @@
+package movieRecommender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * AllPairsSimilarity. Offline job that computes the similarity of every pair of users
+ * once and keeps the k most similar users of each user in a NeighborTable.
+ *
+ * Only the upper triangle of the similarity matrix is computed, since the similarity is
+ * symmetric: each score is offered to both users of the pair. The users are cut into
+ * blocks small enough for the sorted ratings of two blocks to stay in the CPU cache,
+ * and every pair of blocks (I, J) with I <= J is a separate task in the pool. A task
+ * keeps its results in small local heaps and merges them into the shared per-user
+ * heaps once at the end, so the threads rarely wait on each other.
+ *
+ * As in UsersList.findMostSimilarUsers, only positive similarities are kept and ties
+ * go to the user that comes first in the list, so the neighbors do not depend on the
+ * number of threads or the order in which the tasks run.
+ */
+class AllPairsSimilarity {
+    /** Approximate number of bytes of ratings two blocks may use, about a per-core L2 cache */
+    private static final int CACHE_BYTES = 256 * 1024;
+    /** Blocks never have fewer users than this */
+    private static final int MIN_BLOCK_USERS = 16;
+
+    private static final Metrics.Counter SIMILARITIES = Metrics.counter("similarityComputations");
+    private static final Metrics.Histogram RUN_TIME = Metrics.histogram("allPairsSimilarityNanos");
+
+    private final UsersList users;
+    private final int numUsers;
+    private final int k;
+    private final TopKHeap[] heaps;
+
+    /**
+     * Private constructor, use compute to run the job
+     * @param users compacted list of users
+     * @param k number of neighbors to keep per user
+     */
+    private AllPairsSimilarity(UsersList users, int k) {
+        this.users = users;
+        this.numUsers = users.size();
+        this.k = k;
+        this.heaps = new TopKHeap[numUsers];
+        for (int i = 0; i < numUsers; i++) {
+            heaps[i] = new TopKHeap(k);
+        }
+    }
+
+    /**
+     * Computes the k most similar users of every user of the list
+     * @param users list of users, should be compacted (see UsersList.compact)
+     * @param k number of neighbors to keep per user
+     * @param pool pool of threads to use
+     * @return the table of neighbors, row r holds the neighbors of the user at position r
+     */
+    static NeighborTable compute(UsersList users, int k, ForkJoinPool pool) {
+        return compute(users, k, pool, blockSize(users, pool.getParallelism()));
+    }
+
+    /**
+     * Computes the k most similar users of every user of the list, using blocks of the
+     * given number of users
+     * @param users list of users, should be compacted (see UsersList.compact)
+     * @param k number of neighbors to keep per user
+     * @param pool pool of threads to use
+     * @param blockUsers number of users per block
+     * @return the table of neighbors, row r holds the neighbors of the user at position r
+     */
+    static NeighborTable compute(UsersList users, int k, ForkJoinPool pool, int blockUsers) {
+
+        long start = System.nanoTime();
+        AllPairsSimilarity job = new AllPairsSimilarity(users, k);
+        int numBlocks = (job.numUsers + blockUsers - 1) / blockUsers;
+
+        List<BlockTask> tasks = new ArrayList<>();
+        for (int i = 0; i < numBlocks; i++) {
+            for (int j = i; j < numBlocks; j++) {
+                tasks.add(job.new BlockTask(i * blockUsers, Math.min((i + 1) * blockUsers, job.numUsers),
+                        j * blockUsers, Math.min((j + 1) * blockUsers, job.numUsers)));
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+
+        NeighborTable table = new NeighborTable(job.numUsers, k);
+        double[] scores = new double[k];
+        for (int row = 0; row < job.numUsers; row++) {
+            int[] positions = job.heaps[row].drain(scores);
+            int[] ids = new int[positions.length];
+            double[] similarities = new double[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                ids[i] = users.userAt(positions[i]).getId();
+                similarities[i] = scores[i];
+            }
+            table.set(row, users.userAt(row).getId(), ids, similarities);
+        }
+        SIMILARITIES.add((long) job.numUsers * (job.numUsers - 1) / 2);
+        RUN_TIME.record(System.nanoTime() - start);
+        return table;
+    }
+
+    /**
+     * Private helper method that picks the number of users per block: small enough for
+     * two blocks of ratings to fit in CACHE_BYTES, and small enough to give every thread
+     * several pairs of blocks to work on
+     * @param users list of users
+     * @param threads number of threads
+     * @return number of users per block
+     */
+    private static int blockSize(UsersList users, int threads) {
+
+        int numUsers = Math.max(users.size(), 1);
+        long ratings = users.store() == null ? 0 : users.store().size();
+        long bytesPerUser = Math.max(1, 8 * ratings / numUsers); // an int id and a float rating
+        int byCache = (int) Math.min(numUsers, CACHE_BYTES / (2 * bytesPerUser));
+        // n blocks give n * (n + 1) / 2 pairs of blocks, aim for about 8 per thread
+        int byThreads = (int) Math.ceil(numUsers / Math.sqrt(16.0 * threads));
+        return Math.max(MIN_BLOCK_USERS, Math.min(byCache, byThreads));
+    }
+
+    /**
+     * Inner class: BlockTask
+     * Computes the similarities between the users of two blocks of positions. When both
+     * blocks are the same, only the pairs above the diagonal are computed.
+     */
+    private class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int rowFrom;
+        private final int rowTo;
+        private final int colFrom;
+        private final int colTo;
+
+        /**
+         * Creates a task for a pair of blocks, with rowFrom <= colFrom
+         * @param rowFrom first position of the first block, inclusive
+         * @param rowTo last position of the first block, exclusive
+         * @param colFrom first position of the second block, inclusive
+         * @param colTo last position of the second block, exclusive
+         */
+        BlockTask(int rowFrom, int rowTo, int colFrom, int colTo) {
+            this.rowFrom = rowFrom;
+            this.rowTo = rowTo;
+            this.colFrom = colFrom;
+            this.colTo = colTo;
+        }
+
+        /**
+         * Computes the block and merges the local results into the shared heaps
+         */
+        @Override
+        protected void compute() {
+
+            boolean diagonal = rowFrom == colFrom;
+            TopKHeap[] rowHeaps = new TopKHeap[rowTo - rowFrom];
+            TopKHeap[] colHeaps = diagonal ? rowHeaps : new TopKHeap[colTo - colFrom];
+            for (int i = 0; i < rowHeaps.length; i++) {
+                rowHeaps[i] = new TopKHeap(k);
+            }
+            for (int i = 0; !diagonal && i < colHeaps.length; i++) {
+                colHeaps[i] = new TopKHeap(k);
+            }
+
+            for (int a = rowFrom; a < rowTo; a++) {
+                UserNode user = users.userAt(a);
+                for (int b = diagonal ? a + 1 : colFrom; b < colTo; b++) {
+                    double score = user.computeSimilarity(users.userAt(b));
+                    if (score > 0) {
+                        rowHeaps[a - rowFrom].offer(b, score);
+                        colHeaps[b - colFrom].offer(a, score);
+                    }
+                }
+            }
+
+            merge(rowHeaps, rowFrom);
+            if (!diagonal) {
+                merge(colHeaps, colFrom);
+            }
+        }
+
+        /**
+         * Private helper method that offers the local results of a block to the shared heaps
+         * @param local heaps of the users of the block
+         * @param from position of the first user of the block
+         */
+        private void merge(TopKHeap[] local, int from) {
+            for (int i = 0; i < local.length; i++) {
+                TopKHeap shared = heaps[from + i];
+                synchronized (shared) {
+                    shared.offerAll(local[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package movieRecommender;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * DatasetGenerator. Writes a synthetic movies.csv and ratings.csv in the MovieLens format
+ * that MovieRecommender reads, at any number of ratings. The same arguments and seed
+ * always give the same files.
+ *
+ * The data is shaped like MovieLens:
+ *  - user activity follows a power law over the users (every user rates at least
+ *    MIN_RATINGS movies, a few rate thousands);
+ *  - movie popularity follows a Zipf law, so a few movies get most of the ratings;
+ *  - ratings follow the MovieLens half-star histogram, skewed up or down by a bias of
+ *    the user and of the movie, so users have something in common to correlate. The
+ *    biases are symmetric, so the histogram of the whole file stays close to MovieLens.
+ *
+ * The files are streamed to disk one user at a time. Only per-user and per-movie
+ * arrays are kept in memory, never the ratings themselves.
+ */
+public final class DatasetGenerator {
+    /** Fewest ratings of a user, as in the MovieLens datasets */
+    static final int MIN_RATINGS = 20;
+    /** Exponent of the power law of user activity */
+    static final double USER_EXPONENT = 0.9;
+    /** Exponent of the Zipf law of movie popularity */
+    static final double MOVIE_EXPONENT = 0.8;
+    /** Strength of the biases of users and movies */
+    static final double BIAS = 0.25;
+    /** Share of each half-star rating from 0.5 to 5.0 in MovieLens 25M, in percent */
+    private static final double[] HISTOGRAM = {1.6, 3.1, 1.6, 6.6, 5.0, 19.6, 12.6, 26.6, 8.5, 14.4};
+    private static final String[] GENRES = {"Action", "Adventure", "Animation", "Children", "Comedy",
+            "Crime", "Documentary", "Drama", "Fantasy", "Horror", "Musical", "Mystery", "Romance",
+            "Sci-Fi", "Thriller", "War", "Western"};
+    private static final long FIRST_TIMESTAMP = 789652009L; // first rating of MovieLens, January 1995
+    private static final long TIMESTAMP_RANGE = 20L * 365 * 24 * 3600;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private DatasetGenerator() {
+    }
+
+    /**
+     * Writes movies.csv and ratings.csv with the given number of ratings into a directory.
+     * Uses about one user per 150 ratings and one movie per 400 ratings, as in MovieLens 25M.
+     * @param directory directory of the files, created if needed
+     * @param numRatings number of ratings to write
+     * @param seed seed of the random numbers
+     * @throws IOException if the files can not be written
+     */
+    public static void generate(String directory, long numRatings, long seed) throws IOException {
+        int numUsers = (int) Math.max(1, numRatings / 150);
+        int numMovies = (int) Math.max(4000, numRatings / 400);
+        generate(directory, numRatings, numUsers, numMovies, seed);
+    }
+
+    /**
+     * Writes movies.csv and ratings.csv with the given number of ratings, users and movies
+     * into a directory. Users have ids 1 to numUsers and movies 1 to numMovies.
+     * @param directory directory of the files, created if needed
+     * @param numRatings number of ratings to write
+     * @param numUsers number of users
+     * @param numMovies number of movies
+     * @param seed seed of the random numbers
+     * @throws IOException if the files can not be written
+     */
+    public static void generate(String directory, long numRatings, int numUsers, int numMovies, long seed)
+            throws IOException {
+
+        if (numUsers < 1 || numMovies < 2 || numRatings < numUsers
+                || numRatings > (long) numUsers * (numMovies / 2)) {
+            throw new IllegalArgumentException("Can not give " + numRatings + " ratings to " + numUsers
+                    + " users with at most " + numMovies / 2 + " ratings each");
+        }
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // bias of every movie, -1, 0 or +1
+        byte[] movieBias = new byte[numMovies];
+        try (Writer out = writer(dir.resolve("movies.csv"))) {
+            out.write("movieId,title,genres\n");
+            for (int movie = 0; movie < numMovies; movie++) {
+                movieBias[movie] = (byte) bias(random);
+                out.write(Integer.toString(movie + 1));
+                out.write(",Movie ");
+                out.write(Integer.toString(movie + 1));
+                out.write(" (");
+                out.write(Integer.toString(1920 + random.nextInt(100)));
+                out.write("),");
+                int first = random.nextInt(GENRES.length);
+                int second = random.nextInt(GENRES.length + 1);
+                out.write(GENRES[first]);
+                if (second < GENRES.length && second != first) {
+                    out.write('|');
+                    out.write(GENRES[second]);
+                }
+                out.write('\n');
+            }
+        }
+
+        // popularity: the movie of rank r is drawn with a probability proportional to 1 / r^s
+        int[] byRank = permutation(numMovies, random);
+        double[] cumulative = new double[numMovies];
+        double total = 0;
+        for (int rank = 0; rank < numMovies; rank++) {
+            total += Math.pow(rank + 1, -MOVIE_EXPONENT);
+            cumulative[rank] = total;
+        }
+
+        double[] histogram = new double[HISTOGRAM.length];
+        double sum = 0;
+        for (int i = 0; i < HISTOGRAM.length; i++) {
+            sum += HISTOGRAM[i];
+            histogram[i] = sum;
+        }
+        // a rating is drawn at the quantile u^skew of the histogram, for a uniform u;
+        // the skew of a positive bias is below 1, which moves ratings up
+        double[] skew = new double[5];
+        for (int bias = -2; bias <= 2; bias++) {
+            skew[bias + 2] = Math.exp(-BIAS * bias);
+        }
+
+        int[] counts = userCounts(numRatings, numUsers, numMovies / 2, random);
+        long[] seen = new long[(numMovies + 63) >>> 6];
+        double[] keys = new double[numMovies];
+
+        try (Writer out = writer(dir.resolve("ratings.csv"))) {
+            out.write("userId,movieId,rating,timestamp\n");
+            StringBuilder line = new StringBuilder(64);
+
+            for (int user = 0; user < numUsers; user++) {
+                int[] movies = counts[user] > numMovies / 8
+                        ? heavyUserMovies(counts[user], byRank, keys, random)
+                        : userMovies(counts[user], byRank, cumulative, seen, random);
+                Arrays.sort(movies);
+
+                int userBias = bias(random);
+                long timestamp = FIRST_TIMESTAMP + (long) (random.nextDouble() * TIMESTAMP_RANGE);
+                for (int movie: movies) {
+                    double quantile = Math.pow(random.nextDouble(), skew[userBias + movieBias[movie] + 2]);
+                    int star = Arrays.binarySearch(histogram, quantile * sum);
+                    star = Math.min(HISTOGRAM.length - 1, star < 0 ? -star - 1 : star);
+                    timestamp += random.nextInt(600);
+
+                    line.setLength(0);
+                    line.append(user + 1).append(',').append(movie + 1).append(',')
+                            .append((star + 1) / 2).append((star & 1) == 0 ? ".5," : ".0,")
+                            .append(timestamp).append('\n');
+                    out.append(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Private helper method that splits the ratings among the users. The user of rank r
+     * gets MIN_RATINGS plus a share of the rest proportional to 1 / r^s, and ranks are
+     * shuffled over the user ids. Users above the cap are cut to it, and what they lose
+     * is split again among the others in the same proportions.
+     * @param numRatings number of ratings
+     * @param numUsers number of users
+     * @param maxRatings most ratings of one user
+     * @param random random numbers
+     * @return number of ratings of every user
+     */
+    private static int[] userCounts(long numRatings, int numUsers, int maxRatings, SplittableRandom random) {
+
+        int min = (int) Math.min(MIN_RATINGS, numRatings / numUsers);
+        int[] byRank = permutation(numUsers, random);
+        int[] counts = new int[numUsers];
+
+        // the top ranks are the ones that reach the cap, so capped users are always ranks 0 to capped - 1
+        int capped = 0;
+        long assigned;
+        while (true) {
+            long rest = numRatings - (long) min * numUsers - (long) (maxRatings - min) * capped;
+            double total = 0;
+            for (int rank = capped + 1; rank <= numUsers; rank++) {
+                total += Math.pow(rank, -USER_EXPONENT);
+            }
+            int over = capped;
+            while (over < numUsers && min + rest * Math.pow(over + 1, -USER_EXPONENT) / total > maxRatings) {
+                over++;
+            }
+            if (over == capped) {
+                assigned = 0;
+                for (int rank = 0; rank < numUsers; rank++) {
+                    long share = rank < capped ? maxRatings - min
+                            : (long) (rest * Math.pow(rank + 1, -USER_EXPONENT) / total);
+                    counts[byRank[rank]] = (int) (min + share);
+                    assigned += counts[byRank[rank]];
+                }
+                break;
+            }
+            capped = over;
+        }
+
+        // hand out what rounding left over, one rating at a time from the top rank
+        for (int rank = 0; assigned < numRatings; rank = (rank + 1) % numUsers) {
+            if (counts[byRank[rank]] < maxRatings) {
+                counts[byRank[rank]]++;
+                assigned++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Private helper method that draws distinct movies from the popularity distribution,
+     * drawing again whenever a movie was already taken
+     * @param count number of movies
+     * @param byRank movie of every popularity rank
+     * @param cumulative cumulative popularity of the ranks
+     * @param seen bitset of taken movies, all clear; cleared again before returning
+     * @param random random numbers
+     * @return indices of the movies, from 0
+     */
+    private static int[] userMovies(int count, int[] byRank, double[] cumulative, long[] seen,
+                                    SplittableRandom random) {
+
+        int[] movies = new int[count];
+        double total = cumulative[cumulative.length - 1];
+        for (int i = 0; i < count; ) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            int movie = byRank[rank < 0 ? -rank - 1 : rank];
+            if ((seen[movie >>> 6] & (1L << movie)) == 0) {
+                seen[movie >>> 6] |= 1L << movie;
+                movies[i++] = movie;
+            }
+        }
+        for (int movie: movies) {
+            seen[movie >>> 6] = 0;
+        }
+        return movies;
+    }
+
+    /**
+     * Private helper method that draws distinct movies for a user who rates a large part of
+     * them, where drawing again would take too long: every movie gets the key log(u) / weight
+     * for a uniform u, and the movies with the largest keys are taken (weighted sampling
+     * without replacement).
+     * @param count number of movies
+     * @param byRank movie of every popularity rank
+     * @param keys scratch array with one entry per movie
+     * @param random random numbers
+     * @return indices of the movies, from 0
+     */
+    private static int[] heavyUserMovies(int count, int[] byRank, double[] keys, SplittableRandom random) {
+
+        for (int rank = 0; rank < keys.length; rank++) {
+            double weight = Math.pow(rank + 1, -MOVIE_EXPONENT);
+            keys[byRank[rank]] = Math.log(1 - random.nextDouble()) / weight;
+        }
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        double threshold = sorted[keys.length - count];
+
+        int[] movies = new int[count];
+        int i = 0;
+        for (int movie = 0; movie < keys.length && i < count; movie++) {
+            if (keys[movie] >= threshold) {
+                movies[i++] = movie;
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * Private helper method that returns a bias of -1, 0 or +1, with
+     * probabilities 1/4, 1/2 and 1/4
+     * @param random random numbers
+     * @return bias
+     */
+    private static int bias(SplittableRandom random) {
+        int draw = random.nextInt(4);
+        return draw == 0 ? -1 : draw == 3 ? 1 : 0;
+    }
+
+    /**
+     * Private helper method that shuffles the numbers 0 to n - 1
+     * @param n number of values
+     * @param random random numbers
+     * @return random permutation
+     */
+    private static int[] permutation(int n, SplittableRandom random) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+
+    /**
+     * Private helper method that opens a buffered writer for a new file
+     * @param path path of the file
+     * @return writer
+     * @throws IOException if the file can not be created
+     */
+    private static Writer writer(Path path) throws IOException {
+        return new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes a synthetic dataset.
+     * Usage: DatasetGenerator directory numRatings [seed]
+     * Ratings may be given with a suffix, for example 1M, 10M or 25M.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+
+        if (args.length < 2) {
+            System.out.println("Usage: DatasetGenerator directory numRatings [seed]");
+            return;
+        }
+        long numRatings = parseCount(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        long start = System.nanoTime();
+        try {
+            generate(args[0], numRatings, seed);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("File Output Unsuccessful");
+            return;
+        }
+        System.out.printf("%d ratings in %.1f s%n", numRatings, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Parses a number of ratings such as 100000, 100K, 10M or 1G
+     * @param count number, with an optional K, M or G suffix
+     * @return the number
+     */
+    public static long parseCount(String count) {
+        char suffix = Character.toUpperCase(count.charAt(count.length() - 1));
+        long scale = suffix == 'K' ? 1000L : suffix == 'M' ? 1000_000L : suffix == 'G' ? 1000_000_000L : 1;
+        return Long.parseLong(scale == 1 ? count : count.substring(0, count.length() - 1)) * scale;
+    }
+}
@@ -1,14 +1,28 @@
 package movieRecommender;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
 /** A driver class for the MovieRecommender. In the main method, we
  * create a movie recommender, load movie data from files and compute
  * recommendations and anti-recommendations for a particular user.
+ *
+ * Batch mode computes them for many users into one file:
+ *   Driver batch (usersFile | all) num outputFile [threads]
+ * where usersFile holds one user id per line.
  */
 public class Driver {
     public static void main(String[] args) {
 
         MovieRecommender recommender = new MovieRecommender();
 
+        if (args.length > 0 && args[0].equals("batch")) {
+            runBatch(recommender, args);
+            return;
+        }
+
 //        UserNode un = new UserNode(1);
 //        UserNode u1 = new UserNode(2);
 //        UsersList ul = new UsersList();
@@ -53,4 +67,50 @@ public class Driver {
         recommender.findAntiRecommendations(3, 15, "antiRecommendations");
 
     }
+
+    /**
+     * Private helper method that runs the batch mode
+     * @param recommender recommender to use
+     * @param args command line arguments, starting with "batch"
+     */
+    private static void runBatch(MovieRecommender recommender, String[] args) {
+
+        if (args.length < 4) {
+            System.out.println("Usage: Driver batch (usersFile | all) num outputFile [threads]");
+            return;
+        }
+        int num = Integer.parseInt(args[2]);
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        recommender.loadData("movies.csv", "ratings.csv", threads);
+
+        int[] userIds;
+        if (args[1].equals("all")) {
+            userIds = recommender.getUserIds();
+        } else {
+            try {
+                userIds = readUserIds(args[1]);
+            } catch (IOException | NumberFormatException e) {
+                e.printStackTrace();
+                System.out.println("File Input Unsuccessful");
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        recommender.findBatchRecommendations(userIds, num, args[3], threads);
+        System.out.printf("%d users in %.1f s%n", userIds.length, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Private helper method that reads user ids from a file, one per line.
+     * Blank lines are skipped.
+     * @param filename name of the file
+     * @return user ids in the order of the file
+     * @throws IOException if the file can not be read
+     */
+    private static int[] readUserIds(String filename) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(filename));
+        return lines.stream().map(String::trim).filter(line -> !line.isEmpty()).mapToInt(Integer::parseInt).toArray();
+    }
 }
@@ -0,0 +1,236 @@
+package movieRecommender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * FactorModel. A latent factor (matrix factorization) model of the ratings: every user
+ * and every movie gets a vector of factors and a bias, and the predicted rating of a
+ * movie by a user is
+ *   mean + userBias + movieBias + (user factors . movie factors)
+ *
+ * The factors of all users and of all movies are stored in two contiguous float arrays,
+ * row after row. The model is trained with stochastic gradient descent over the ratings
+ * of a compacted UsersList, for a fixed number of iterations. The ratings are shuffled
+ * once and split between the threads of a pool, which update the shared arrays without
+ * any locking (Hogwild): two threads rarely touch the same user or movie at the same
+ * time, and an occasional lost update does not hurt the training. With one thread the
+ * training is deterministic for a given seed.
+ *
+ * Once trained, a query scores every movie with one dot product over contiguous memory
+ * and keeps the best in a TopKHeap, so it does not depend on the number of users.
+ */
+class FactorModel {
+    private static final float LEARNING_RATE = 0.01f;
+    private static final float LEARNING_DECAY = 0.95f; // learning rate is multiplied by this after every iteration
+    private static final float REGULARIZATION = 0.05f;
+    private static final double INITIAL_SCALE = 0.1;
+
+    private final int factors;
+    private final int numUsers;
+    private final int numMovies;
+    private final float[] userFactors;
+    private final float[] movieFactors;
+    private final float[] userBias;
+    private final float[] movieBias;
+    private final float mean;
+    private final MovieIndex movies;
+    private final int[] movieIds; // movie id of every dense index
+
+    // training data, one entry per rating, in shuffled order
+    private int[] trainUsers;
+    private int[] trainMovies;
+    private float[] trainRatings;
+
+    /**
+     * Private constructor, use train to build a model
+     * @param users compacted list of users
+     * @param factors number of factors per user and movie
+     * @param seed seed of the random initial factors and of the order of the ratings
+     */
+    private FactorModel(UsersList users, int factors, long seed) {
+
+        RatingsStore store = users.store();
+        this.factors = factors;
+        this.numUsers = store.rows();
+        this.movies = users.movieIndex();
+        this.numMovies = movies.size();
+        this.movieIds = new int[numMovies];
+
+        int total = store.size();
+        trainUsers = new int[total];
+        trainMovies = new int[total];
+        trainRatings = new float[total];
+        double sum = 0;
+        for (int row = 0; row < numUsers; row++) {
+            for (int pos = store.rowStart(row); pos < store.rowEnd(row); pos++) {
+                int movie = movies.get(store.movieId(pos));
+                movieIds[movie] = store.movieId(pos);
+                trainUsers[pos] = row;
+                trainMovies[pos] = movie;
+                trainRatings[pos] = (float) store.rating(pos);
+                sum += store.rating(pos);
+            }
+        }
+        this.mean = total == 0 ? 0 : (float) (sum / total);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = total - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            swap(i, j);
+        }
+
+        userFactors = randomFactors(numUsers * factors, random);
+        movieFactors = randomFactors(numMovies * factors, random);
+        userBias = new float[numUsers];
+        movieBias = new float[numMovies];
+    }
+
+    /**
+     * Trains a model on the ratings of a compacted list
+     * @param users list of users, compacted (see UsersList.compact)
+     * @param factors number of factors per user and movie
+     * @param iterations number of passes over all ratings
+     * @param pool pool of threads to use
+     * @param seed seed of the random initial factors and of the order of the ratings
+     * @return the trained model
+     */
+    static FactorModel train(UsersList users, int factors, int iterations, ForkJoinPool pool, long seed) {
+
+        FactorModel model = new FactorModel(users, factors, seed);
+        int total = model.trainRatings.length;
+        int parts = Math.max(1, Math.min(pool.getParallelism(), total));
+        float rate = LEARNING_RATE;
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            float currentRate = rate;
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (int part = 0; part < parts; part++) {
+                int from = (int) ((long) total * part / parts);
+                int to = (int) ((long) total * (part + 1) / parts);
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        model.descend(from, to, currentRate);
+                    }
+                });
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+            rate *= LEARNING_DECAY;
+        }
+        return model;
+    }
+
+    /**
+     * Private helper method that runs one step of gradient descent for every rating in a range
+     * @param from first rating, inclusive
+     * @param to last rating, exclusive
+     * @param rate learning rate
+     */
+    private void descend(int from, int to, float rate) {
+
+        for (int i = from; i < to; i++) {
+            int user = trainUsers[i];
+            int movie = trainMovies[i];
+            int u = user * factors;
+            int m = movie * factors;
+
+            float error = trainRatings[i] - predict(user, movie);
+            userBias[user] += rate * (error - REGULARIZATION * userBias[user]);
+            movieBias[movie] += rate * (error - REGULARIZATION * movieBias[movie]);
+            for (int f = 0; f < factors; f++) {
+                float userFactor = userFactors[u + f];
+                float movieFactor = movieFactors[m + f];
+                userFactors[u + f] += rate * (error * movieFactor - REGULARIZATION * userFactor);
+                movieFactors[m + f] += rate * (error * userFactor - REGULARIZATION * movieFactor);
+            }
+        }
+    }
+
+    /**
+     * Private helper method that predicts the rating of a movie by a user
+     * @param user row of the user
+     * @param movie dense index of the movie
+     * @return predicted rating
+     */
+    private float predict(int user, int movie) {
+        float dot = SimilarityKernel.dot(userFactors, user * factors, movieFactors, movie * factors, factors);
+        return mean + userBias[user] + movieBias[movie] + dot;
+    }
+
+    /**
+     * Returns the root mean squared error of the model on the ratings it was trained on
+     * @return training error
+     */
+    double trainingError() {
+        double sum = 0;
+        for (int i = 0; i < trainRatings.length; i++) {
+            double error = trainRatings[i] - predict(trainUsers[i], trainMovies[i]);
+            sum += error * error;
+        }
+        return trainRatings.length == 0 ? 0 : Math.sqrt(sum / trainRatings.length);
+    }
+
+    /**
+     * Recommends the movies the user has not rated with the highest predicted ratings
+     * @param user the user
+     * @param num max number of movies
+     * @return ids of the recommended movies, from best to worst; empty if the user was
+     *         added after the model was trained
+     */
+    int[] recommend(UserNode user, int num) {
+
+        int row = user.position;
+        if (row < 0 || row >= numUsers) {
+            return new int[0];
+        }
+        long[] seen = user.seenMovies(movies); // indexed by the same dense indices as the movie factors
+        TopKHeap best = new TopKHeap(num);
+        for (int movie = 0; movie < numMovies; movie++) {
+            if ((movie >>> 6) >= seen.length || (seen[movie >>> 6] & (1L << movie)) == 0) {
+                best.offer(movieIds[movie], predict(row, movie));
+            }
+        }
+        return best.drain(null);
+    }
+
+    /**
+     * Private helper method that swaps two ratings of the training data
+     * @param i position of the first rating
+     * @param j position of the second rating
+     */
+    private void swap(int i, int j) {
+        int user = trainUsers[i];
+        int movie = trainMovies[i];
+        float rating = trainRatings[i];
+        trainUsers[i] = trainUsers[j];
+        trainMovies[i] = trainMovies[j];
+        trainRatings[i] = trainRatings[j];
+        trainUsers[j] = user;
+        trainMovies[j] = movie;
+        trainRatings[j] = rating;
+    }
+
+    /**
+     * Private helper method that creates an array of small random factors
+     * @param length length of the array
+     * @param random source of random numbers
+     * @return array of factors
+     */
+    private static float[] randomFactors(int length, SplittableRandom random) {
+        float[] result = new float[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (float) ((random.nextDouble() - 0.5) * 2 * INITIAL_SCALE);
+        }
+        return result;
+    }
+}
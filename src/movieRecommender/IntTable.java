@@ -0,0 +1,123 @@
+package movieRecommender;
+
+import java.util.Arrays;
+
+/**
+ * IntTable. An open-addressing hash table from int keys to non-negative int values.
+ * Uses linear probing over parallel arrays of primitive keys and values, so no objects
+ * are allocated per lookup. Entries are never removed. Shared by the UsersList (user
+ * id to position in the list) and the MovieIndex (movie id to dense index).
+ * Lookups may run on several threads at once, but not while an entry is being put.
+ */
+class IntTable {
+    private static final int EMPTY = Integer.MIN_VALUE; // marks a free slot
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an empty table
+     * @param capacity initial number of slots, a power of two
+     */
+    IntTable(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the number of keys in the table
+     * @return number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value stored under a key
+     * @param key the key, not Integer.MIN_VALUE
+     * @return value of the key, or -1 if there is none
+     */
+    int get(int key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a value under a key, replacing the value stored under the same key
+     * @param key the key, not Integer.MIN_VALUE
+     * @param value the value, not negative
+     */
+    void put(int key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Returns the approximate number of bytes of heap used by the table
+     * @return size in bytes
+     */
+    long sizeInBytes() {
+        return 8L * keys.length;
+    }
+
+    /**
+     * Private helper method that returns the home slot for a given key.
+     * Mixes the bits of the key so that consecutive ids spread over the table.
+     * @param key the key
+     * @return index of the first slot to probe
+     */
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Private helper method that doubles the capacity of the table and re-inserts all entries
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Private helper method that allocates empty arrays of the given capacity
+     * @param capacity number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+}
@@ -0,0 +1,225 @@
+package movieRecommender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ItemNeighbors. The model of the item-based recommender: the M most similar movies
+ * (neighbors) of every movie, precomputed from the ratings of all users.
+ *
+ * Two movies are similar if the users who rated both rated them the same way compared
+ * to their own average rating (adjusted cosine similarity). The similarities of one
+ * movie with all others are accumulated in a single pass over the users who rated it
+ * and the movies those users rated, so only pairs of movies that share a user are
+ * ever touched. The movies are split into chunks that run in parallel.
+ *
+ * The neighbors are kept in primitive arrays indexed by the dense movie indices of the
+ * MovieIndex of the UsersList. A query only walks the neighbors of the movies the user
+ * rated, so its cost depends on the user's number of ratings, not on the number of users.
+ */
+class ItemNeighbors {
+    /** Number of movies whose neighbors one task computes */
+    private static final int MOVIES_PER_TASK = 256;
+
+    private final int m;
+    private final MovieIndex movies;
+    private final int[] movieIds; // movie id of every dense index
+    private final int[] counts;
+    private final int[] neighbors; // dense indices, m per movie, from most to least similar
+    private final float[] scores;
+
+    /**
+     * Private constructor, use compute to build the model
+     * @param m maximum number of neighbors per movie
+     * @param movies dense indices of the movies
+     * @param movieIds movie id of every dense index
+     */
+    private ItemNeighbors(int m, MovieIndex movies, int[] movieIds) {
+        this.m = m;
+        this.movies = movies;
+        this.movieIds = movieIds;
+        this.counts = new int[movieIds.length];
+        this.neighbors = new int[movieIds.length * m];
+        this.scores = new float[movieIds.length * m];
+    }
+
+    /**
+     * Computes the m most similar movies of every movie rated in the compacted list
+     * @param users list of users, compacted (see UsersList.compact)
+     * @param m number of neighbors to keep per movie
+     * @param pool pool of threads to use
+     * @return the model
+     */
+    static ItemNeighbors compute(UsersList users, int m, ForkJoinPool pool) {
+
+        RatingsStore store = users.store();
+        MovieIndex movies = users.movieIndex();
+        int numUsers = store.rows();
+        int numMovies = movies.size();
+        int total = store.size();
+
+        // ratings by user, with dense movie indices and ratings minus the user's mean
+        int[] userOffsets = new int[numUsers + 1];
+        int[] userMovies = new int[total];
+        float[] userValues = new float[total];
+        int[] movieIds = new int[numMovies];
+        int[] movieOffsets = new int[numMovies + 1];
+
+        for (int row = 0; row < numUsers; row++) {
+            double mean = users.userAt(row).getMeanRating();
+            userOffsets[row] = store.rowStart(row);
+            for (int pos = store.rowStart(row); pos < store.rowEnd(row); pos++) {
+                int movie = movies.get(store.movieId(pos));
+                userMovies[pos] = movie;
+                userValues[pos] = (float) (store.rating(pos) - mean);
+                movieIds[movie] = store.movieId(pos);
+                movieOffsets[movie + 1]++;
+            }
+        }
+        userOffsets[numUsers] = total;
+
+        // the same ratings by movie, users in list order
+        for (int movie = 0; movie < numMovies; movie++) {
+            movieOffsets[movie + 1] += movieOffsets[movie];
+        }
+        int[] movieUsers = new int[total];
+        float[] movieValues = new float[total];
+        int[] next = new int[numMovies];
+        System.arraycopy(movieOffsets, 0, next, 0, numMovies);
+        double[] norms = new double[numMovies];
+
+        for (int row = 0; row < numUsers; row++) {
+            for (int pos = userOffsets[row]; pos < userOffsets[row + 1]; pos++) {
+                int movie = userMovies[pos];
+                movieUsers[next[movie]] = row;
+                movieValues[next[movie]] = userValues[pos];
+                next[movie]++;
+                norms[movie] += (double) userValues[pos] * userValues[pos];
+            }
+        }
+        for (int movie = 0; movie < numMovies; movie++) {
+            norms[movie] = Math.sqrt(norms[movie]);
+        }
+
+        ItemNeighbors model = new ItemNeighbors(m, movies, movieIds);
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int from = 0; from < numMovies; from += MOVIES_PER_TASK) {
+            int start = from;
+            int end = Math.min(from + MOVIES_PER_TASK, numMovies);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    model.computeNeighbors(start, end, userOffsets, userMovies, userValues,
+                            movieOffsets, movieUsers, movieValues, norms);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        return model;
+    }
+
+    /**
+     * Private helper method that computes the neighbors of a range of movies.
+     * For every movie, the products of its ratings with the ratings of every other movie
+     * of the same users are summed into a dense array; only the touched entries are read.
+     * @param from first dense index, inclusive
+     * @param to last dense index, exclusive
+     * @param userOffsets start of each user's ratings
+     * @param userMovies dense movie indices of the ratings by user
+     * @param userValues centered ratings by user
+     * @param movieOffsets start of each movie's ratings
+     * @param movieUsers users of the ratings by movie
+     * @param movieValues centered ratings by movie
+     * @param norms norm of the centered ratings of each movie
+     */
+    private void computeNeighbors(int from, int to, int[] userOffsets, int[] userMovies, float[] userValues,
+                                  int[] movieOffsets, int[] movieUsers, float[] movieValues, double[] norms) {
+
+        int numMovies = movieIds.length;
+        double[] dots = new double[numMovies];
+        int[] stamps = new int[numMovies]; // dots[j] belongs to movie stamps[j] - 1
+        int[] touched = new int[numMovies];
+        double[] similarities = new double[m];
+
+        for (int movie = from; movie < to; movie++) {
+            int numTouched = 0;
+
+            for (int p = movieOffsets[movie]; p < movieOffsets[movie + 1]; p++) {
+                int user = movieUsers[p];
+                double value = movieValues[p];
+                for (int q = userOffsets[user]; q < userOffsets[user + 1]; q++) {
+                    int other = userMovies[q];
+                    if (stamps[other] != movie + 1) {
+                        stamps[other] = movie + 1;
+                        dots[other] = 0;
+                        touched[numTouched++] = other;
+                    }
+                    dots[other] += value * userValues[q];
+                }
+            }
+
+            TopKHeap heap = new TopKHeap(m);
+            for (int i = 0; i < numTouched; i++) {
+                int other = touched[i];
+                if (other != movie) {
+                    double similarity = dots[other] / (norms[movie] * norms[other]);
+                    if (similarity > 0) {
+                        heap.offer(other, similarity);
+                    }
+                }
+            }
+            int[] best = heap.drain(similarities);
+            counts[movie] = best.length;
+            for (int i = 0; i < best.length; i++) {
+                neighbors[movie * m + i] = best[i];
+                scores[movie * m + i] = (float) similarities[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of neighbors per movie
+     * @return m
+     */
+    int m() {
+        return m;
+    }
+
+    /**
+     * Recommends the movies the user has not rated with the highest predicted ratings.
+     * The prediction for a movie is the user's mean rating plus the similarity-weighted
+     * average of the user's centered ratings of the rated movies it is a neighbor of.
+     * @param user the user
+     * @param num max number of movies
+     * @return ids of the recommended movies, from best to worst
+     */
+    int[] recommend(UserNode user, int num) {
+
+        MovieRatingsList ratings = user.getMovieRatings();
+        double mean = user.getMeanRating();
+        MovieScores predictions = new MovieScores(Math.min(m * Math.max(1, user.getRatingCount()), movieIds.length));
+        ratings.forEachRating((movieId, rating) -> predictions.exclude(movieId));
+
+        ratings.forEachRating((movieId, rating) -> {
+            int movie = movies.get(movieId);
+            if (movie >= 0 && movie < counts.length) {
+                for (int i = movie * m; i < movie * m + counts[movie]; i++) {
+                    double similarity = scores[i];
+                    predictions.add(movieIds[neighbors[i]], similarity * (rating - mean), similarity);
+                }
+            }
+        });
+
+        TopKHeap best = new TopKHeap(num);
+        predictions.offerTo(mean, best);
+        return best.drain(null);
+    }
+}
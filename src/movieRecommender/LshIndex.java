@@ -0,0 +1,325 @@
+package movieRecommender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * LshIndex. Finds users that are probably similar to a user without comparing it with
+ * every other user, using locality-sensitive hashing with random hyperplanes.
+ *
+ * The ratings of a user minus the user's mean rating form a sparse vector over movies.
+ * Each of the index's hash tables has `bits` random hyperplanes, and bit k of a user's
+ * signature in the table is the side of hyperplane k the vector falls on. Two vectors
+ * with a small angle between them (which, for mean-centered ratings, is close to a high
+ * Pearson correlation) are likely to fall on the same side of every hyperplane, and so
+ * to land in the same bucket. The hyperplanes are never stored: the component of a
+ * hyperplane for a movie is +1 or -1, taken from a hash of the seed, the table and the
+ * movie id, so users added after the index was built can still be hashed.
+ *
+ * Every table is an array of (signature, user position) pairs packed into longs and
+ * sorted, so a bucket is a range found by binary search. A query collects the users in
+ * the user's bucket of every table, plus the buckets reached by flipping the `probes`
+ * least certain bits of the signature (multi-probe), and re-ranks these candidates with
+ * the exact similarity. More tables and probes find the most similar user more often;
+ * more bits make the buckets, and the queries, smaller.
+ */
+class LshIndex {
+    /** Number of users whose signatures one task computes when building */
+    private static final int USERS_PER_TASK = 256;
+
+    private static final Metrics.Counter SIMILARITIES = Metrics.counter("similarityComputations");
+    private static final Metrics.Histogram SIMILARITIES_PER_SEARCH = Metrics.histogram("similaritiesPerSearch");
+
+    private final UsersList users;
+    private final int numTables;
+    private final int bits;
+    private final int probes;
+    private final long seed;
+    private final long[][] tables; // per table: signature << 32 | position, sorted
+
+    /**
+     * Private constructor, use build to create an index
+     * @param users list of users
+     * @param numTables number of hash tables
+     * @param bits number of hyperplanes (signature bits) per table
+     * @param probes number of extra buckets probed per table
+     * @param seed seed of the hyperplanes
+     */
+    private LshIndex(UsersList users, int numTables, int bits, int probes, long seed) {
+        this.users = users;
+        this.numTables = numTables;
+        this.bits = bits;
+        this.probes = probes;
+        this.seed = seed;
+        this.tables = new long[numTables][users.size()];
+    }
+
+    /**
+     * Hashes all the users of the list into a new index
+     * @param users list of users
+     * @param numTables number of hash tables
+     * @param bits number of signature bits per table, from 1 to 31
+     * @param probes number of extra buckets probed per table, from 0 to bits
+     * @param seed seed of the hyperplanes
+     * @param pool pool of threads used to compute the signatures
+     * @return the index
+     */
+    static LshIndex build(UsersList users, int numTables, int bits, int probes, long seed, ForkJoinPool pool) {
+
+        if (bits < 1 || bits > 31 || probes < 0 || probes > bits || numTables < 1) {
+            throw new IllegalArgumentException("Invalid LSH parameters: " + numTables + " tables, "
+                    + bits + " bits, " + probes + " probes");
+        }
+        LshIndex index = new LshIndex(users, numTables, bits, probes, seed);
+        int numUsers = users.size();
+
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int from = 0; from < numUsers; from += USERS_PER_TASK) {
+            int start = from;
+            int end = Math.min(from + USERS_PER_TASK, numUsers);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    float[] projections = new float[index.numTables * index.bits];
+                    for (int position = start; position < end; position++) {
+                        index.project(users.userAt(position), projections);
+                        for (int table = 0; table < index.numTables; table++) {
+                            long signature = index.signature(projections, table);
+                            index.tables[table][position] = signature << 32 | position;
+                        }
+                    }
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+
+        for (long[] table: index.tables) {
+            Arrays.sort(table);
+        }
+        return index;
+    }
+
+    /**
+     * Hashes the given users again after their ratings changed, and adds the users
+     * appended to the list since the index was built. The entries of the other users
+     * are kept, so an update costs one pass over every table instead of a rebuild.
+     * @param positions positions of the changed and new users in the list
+     */
+    void update(BitSet positions) {
+
+        int changed = positions.cardinality();
+        long[][] added = new long[numTables][changed];
+        float[] projections = new float[numTables * bits];
+        int i = 0;
+
+        for (int position = positions.nextSetBit(0); position >= 0; position = positions.nextSetBit(position + 1)) {
+            project(users.userAt(position), projections);
+            for (int table = 0; table < numTables; table++) {
+                added[table][i] = signature(projections, table) << 32 | position;
+            }
+            i++;
+        }
+
+        for (int table = 0; table < numTables; table++) {
+            long[] entries = tables[table];
+            long[] additions = added[table];
+            Arrays.sort(additions);
+            int kept = entries.length - positions.get(0, entries.length).cardinality();
+            long[] merged = new long[kept + changed];
+            int from = 0;
+            int next = 0;
+
+            for (int to = 0; to < merged.length; to++) {
+                while (from < entries.length && positions.get((int) entries[from])) {
+                    from++;
+                }
+                if (next == changed || (from < entries.length && entries[from] < additions[next])) {
+                    merged[to] = entries[from++];
+                } else {
+                    merged[to] = additions[next++];
+                }
+            }
+            tables[table] = merged;
+        }
+    }
+
+    /**
+     * Returns the positions of the users in the same buckets as the given user, and in
+     * the probed neighboring buckets, without the user itself
+     * @param user the user
+     * @return positions of the candidates, from lowest to highest
+     */
+    int[] candidates(UserNode user) {
+
+        float[] projections = new float[numTables * bits];
+        project(user, projections);
+        int[] buckets = new int[3 * numTables * (1 + probes)]; // table, start and end of every probed bucket
+        int numBuckets = 0;
+        int total = 0;
+        Integer[] order = new Integer[bits];
+
+        for (int table = 0; table < numTables; table++) {
+            long signature = signature(projections, table);
+            total += find(table, signature, buckets, numBuckets++);
+
+            if (probes > 0) {
+                // flip the bits whose projections are closest to zero, the least certain ones
+                int offset = table * bits;
+                for (int k = 0; k < bits; k++) {
+                    order[k] = k;
+                }
+                Arrays.sort(order, (a, b) -> Float.compare(Math.abs(projections[offset + a]),
+                        Math.abs(projections[offset + b])));
+                for (int p = 0; p < probes; p++) {
+                    total += find(table, signature ^ (1L << order[p]), buckets, numBuckets++);
+                }
+            }
+        }
+
+        int[] result = new int[total];
+        int count = 0;
+        for (int b = 0; b < numBuckets; b++) {
+            long[] entries = tables[buckets[3 * b]];
+            for (int i = buckets[3 * b + 1]; i < buckets[3 * b + 2]; i++) {
+                result[count++] = (int) entries[i];
+            }
+        }
+
+        // sort, drop duplicates and the user itself
+        Arrays.sort(result);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if ((unique == 0 || result[i] != result[unique - 1]) && result[i] != user.position) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+
+    /**
+     * Finds the user most similar to the given user among the candidates of the index,
+     * with the exact similarity. On equal scores, the user that comes first in the list wins.
+     * @param user the user
+     * @return the most similar candidate, or null if no candidate has a positive similarity
+     */
+    UserNode findMostSimilarUser(UserNode user) {
+
+        QueryEvents.SimilarityScan scan = new QueryEvents.SimilarityScan();
+        scan.begin();
+        UserNode mostSimilarUser = null;
+        double topScore = 0;
+
+        int[] candidates = candidates(user);
+        for (int position: candidates) {
+            UserNode current = users.userAt(position);
+            double currentScore = user.computeSimilarity(current);
+            if (currentScore > topScore) {
+                topScore = currentScore;
+                mostSimilarUser = current;
+            }
+        }
+        SIMILARITIES.add(candidates.length);
+        SIMILARITIES_PER_SEARCH.record(candidates.length);
+        scan.userId = user.getId();
+        scan.candidates = candidates.length;
+        scan.commit();
+        return mostSimilarUser;
+    }
+
+    /**
+     * Private helper method that finds the range of a bucket in a table
+     * @param table index of the table
+     * @param signature signature of the bucket
+     * @param buckets array that receives the table, start and end of the bucket
+     * @param bucket index of the bucket in that array
+     * @return number of users in the bucket
+     */
+    private int find(int table, long signature, int[] buckets, int bucket) {
+
+        long[] entries = tables[table];
+        long key = signature << 32;
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int end = low;
+        while (end < entries.length && (entries[end] >>> 32) == signature) {
+            end++;
+        }
+        buckets[3 * bucket] = table;
+        buckets[3 * bucket + 1] = low;
+        buckets[3 * bucket + 2] = end;
+        return end - low;
+    }
+
+    /**
+     * Private helper method that computes the projections of a user's mean-centered
+     * ratings on every hyperplane of every table
+     * @param user the user
+     * @param projections array of numTables * bits values to fill
+     */
+    private void project(UserNode user, float[] projections) {
+
+        Arrays.fill(projections, 0);
+        double mean = user.getMeanRating();
+        user.getMovieRatings().forEachRating((movieId, rating) -> {
+            float value = (float) (rating - mean);
+            for (int table = 0; table < numTables; table++) {
+                long h = hash(table, movieId);
+                int offset = table * bits;
+                for (int k = 0; k < bits; k++) {
+                    projections[offset + k] += (h >>> k & 1) != 0 ? value : -value;
+                }
+            }
+        });
+    }
+
+    /**
+     * Private helper method that turns the projections of one table into a signature
+     * @param projections projections computed by project
+     * @param table index of the table
+     * @return signature, bit k is set if the projection on hyperplane k is not negative
+     */
+    private long signature(float[] projections, int table) {
+        long signature = 0;
+        int offset = table * bits;
+        for (int k = 0; k < bits; k++) {
+            if (projections[offset + k] >= 0) {
+                signature |= 1L << k;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Private helper method that gives the components of the hyperplanes of a table for
+     * a movie: bit k of the result is the sign of hyperplane k (set for +1)
+     * @param table index of the table
+     * @param movieId id of the movie
+     * @return 64 random bits that depend only on the seed, the table and the movie
+     */
+    private long hash(int table, int movieId) {
+        // the finalizer of SplitMix64
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) table << 32) ^ (movieId & 0xFFFFFFFFL) ^ 0x5DEECE66DL);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
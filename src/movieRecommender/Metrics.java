@@ -0,0 +1,364 @@
+package movieRecommender;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics. A registry of counters, gauges and histograms that the recommender records
+ * into, published as one MBean named movieRecommender:type=Metrics so any JMX client
+ * can read it. Every counter and gauge is an attribute with the name of the metric;
+ * every histogram gives the attributes name.count, name.mean, name.p50, name.p90,
+ * name.p99 and name.max.
+ *
+ * Metrics are created once, in static fields of the classes that record them, and
+ * recording never takes a lock: counters are LongAdders, and histograms increment one
+ * bucket of an AtomicLongArray.
+ */
+final class Metrics implements DynamicMBean {
+    static final String OBJECT_NAME = "movieRecommender:type=Metrics";
+    private static final String[] HISTOGRAM_STATS = {"count", "mean", "p50", "p90", "p99", "max"};
+    private static final Metrics REGISTRY = new Metrics();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(REGISTRY, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Private constructor, the registry is a singleton
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter with the given name, creating it the first time
+     * @param name name of the counter
+     * @return the counter
+     */
+    static Counter counter(String name) {
+        return (Counter) REGISTRY.metrics.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Returns the gauge with the given name, creating it the first time
+     * @param name name of the gauge
+     * @return the gauge
+     */
+    static Gauge gauge(String name) {
+        return (Gauge) REGISTRY.metrics.computeIfAbsent(name, key -> new Gauge());
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it the first time
+     * @param name name of the histogram, ending with the unit of its values (for example Nanos)
+     * @return the histogram
+     */
+    static Histogram histogram(String name) {
+        return (Histogram) REGISTRY.metrics.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * A count that only goes up, such as the number of ratings loaded
+     */
+    static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Adds one to the counter
+         */
+        void increment() {
+            count.increment();
+        }
+
+        /**
+         * Adds the given amount to the counter
+         * @param amount amount to add
+         */
+        void add(long amount) {
+            count.add(amount);
+        }
+
+        /**
+         * Returns the current count
+         * @return count
+         */
+        long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * A value that is set from time to time, such as the number of users in the model
+     */
+    static final class Gauge {
+        private volatile long value;
+
+        /**
+         * Sets the value of the gauge
+         * @param value new value
+         */
+        void set(long value) {
+            this.value = value;
+        }
+
+        /**
+         * Returns the last value set
+         * @return value
+         */
+        long get() {
+            return value;
+        }
+    }
+
+    /**
+     * Histogram. Counts non-negative values, usually latencies in nanoseconds, in
+     * buckets on a log scale: every power of two is split into four buckets, so a
+     * percentile is off by at most a quarter of its value. Values below 8 have a bucket
+     * each.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 8 + 4 * 60;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Adds a value to the histogram
+         * @param value value to add, negative values count as 0
+         */
+        void record(long value) {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(bucket(value));
+            sum.add(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Returns the number of values added
+         * @return count
+         */
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Returns the mean of the values added
+         * @return mean, 0 if there are none
+         */
+        double mean() {
+            long count = count();
+            return count == 0 ? 0 : (double) sum.sum() / count;
+        }
+
+        /**
+         * Returns the largest value added
+         * @return max, 0 if there are none
+         */
+        long max() {
+            return max.get();
+        }
+
+        /**
+         * Returns an upper bound of the given percentile of the values: the largest value
+         * of the bucket that holds it
+         * @param percentile percentile, from 0 to 100
+         * @return the percentile, 0 if there are no values
+         */
+        long percentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                count += counts[i];
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the bucket of a value
+         * @param value non-negative value
+         * @return index of the bucket
+         */
+        static int bucket(long value) {
+            if (value < 8) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value); // at least 3
+            int sub = (int) (value >>> (exponent - 2)) & 3;
+            return 8 + 4 * (exponent - 3) + sub;
+        }
+
+        /**
+         * Returns the largest value of a bucket
+         * @param bucket index of the bucket
+         * @return largest value that falls into the bucket
+         */
+        static long upperBound(int bucket) {
+            if (bucket < 8) {
+                return bucket;
+            }
+            int exponent = 3 + (bucket - 8) / 4;
+            int sub = (bucket - 8) % 4;
+            return ((5L + sub) << (exponent - 2)) - 1;
+        }
+    }
+
+    /**
+     * Returns the value of an attribute of the MBean
+     * @param attribute name of a counter or gauge, or of a histogram followed by a statistic
+     * @return the value
+     * @throws AttributeNotFoundException if there is no such metric
+     */
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+
+        Object metric = metrics.get(attribute);
+        if (metric instanceof Counter) {
+            return ((Counter) metric).get();
+        }
+        if (metric instanceof Gauge) {
+            return ((Gauge) metric).get();
+        }
+        int dot = attribute.lastIndexOf('.');
+        metric = dot < 0 ? null : metrics.get(attribute.substring(0, dot));
+        if (metric instanceof Histogram) {
+            Histogram histogram = (Histogram) metric;
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return histogram.count();
+                case "mean":
+                    return histogram.mean();
+                case "p50":
+                    return histogram.percentile(50);
+                case "p90":
+                    return histogram.percentile(90);
+                case "p99":
+                    return histogram.percentile(99);
+                case "max":
+                    return histogram.max();
+                default:
+                    break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    /**
+     * Returns the values of several attributes of the MBean, leaving out unknown ones
+     * @param attributes names of the attributes
+     * @return the attributes found
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute: attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // left out, as the interface asks
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Metrics are read only
+     * @param attribute attribute to set
+     * @throws AttributeNotFoundException always
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    /**
+     * Metrics are read only
+     * @param attributes attributes to set
+     * @return an empty list, none of them is set
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /**
+     * The MBean has no operations
+     * @param actionName name of the operation
+     * @param params parameters of the operation
+     * @param signature types of the parameters
+     * @return never returns
+     * @throws ReflectionException always
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    /**
+     * Describes the attributes of all the metrics registered so far
+     * @return description of the MBean
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> metric: metrics.entrySet()) {
+            String name = metric.getKey();
+            if (metric.getValue() instanceof Histogram) {
+                for (String stat: HISTOGRAM_STATS) {
+                    String type = stat.equals("mean") ? Double.class.getName() : Long.class.getName();
+                    attributes.add(new MBeanAttributeInfo(name + "." + stat, type, stat + " of " + name,
+                            true, false, false));
+                }
+            } else {
+                String kind = metric.getValue() instanceof Counter ? "counter " : "gauge ";
+                attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), kind + name,
+                        true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of the movie recommender",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
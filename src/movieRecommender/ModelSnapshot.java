@@ -0,0 +1,246 @@
+package movieRecommender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ModelSnapshot. Saves a fully loaded model (users, their sorted ratings and movie titles)
+ * to a compact binary file, and opens such a file again through a memory mapping. Opening
+ * copies every column out of the mapping, so it still reads the whole file, but it skips
+ * the parsing and sorting of the csv files.
+ *
+ * File layout (little endian):
+ *  header:  magic, format version, number of users, number of ratings, number of movies
+ *  users:   user ids, then the row offsets of the RatingsStore (number of users + 1 ints)
+ *  ratings: movie ids (ints), then ratings (floats), in RatingsStore order
+ *  by id:   movie ids, then ratings, with every row sorted by movie id
+ *  movies:  for every movie, its id, the length of its title in bytes and the UTF-8 title
+ */
+class ModelSnapshot {
+    static final int MAGIC = 0x4D525331; // "MRS1"
+    static final int VERSION = 2;
+    private static final int HEADER_BYTES = 5 * 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Writes the given users and movie titles to a snapshot file.
+     * The ratings of the users must be compacted (see UsersList.compact).
+     * @param filename name of the snapshot file
+     * @param store compacted ratings of all users
+     * @param userIds ids of the users, one per row of the store
+     * @param movies map from movie ids to titles
+     * @throws IOException if the file can not be written
+     */
+    static void save(String filename, RatingsStore store, int[] userIds, Map<Integer, String> movies)
+            throws IOException {
+
+        Path path = Paths.get(filename);
+        if (path.getParent() != null) {
+            path.getParent().toFile().mkdirs();
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int numRatings = store.size();
+
+            buf.putInt(MAGIC).putInt(VERSION).putInt(userIds.length).putInt(numRatings).putInt(movies.size());
+
+            for (int userId: userIds) {
+                buf = ensure(channel, buf, 4);
+                buf.putInt(userId);
+            }
+            for (int row = 0; row < store.rows(); row++) {
+                buf = ensure(channel, buf, 4);
+                buf.putInt(store.rowStart(row));
+            }
+            buf = ensure(channel, buf, 4);
+            buf.putInt(numRatings);
+
+            for (int i = 0; i < numRatings; i++) {
+                buf = ensure(channel, buf, 4);
+                buf.putInt(store.movieId(i));
+            }
+            for (int i = 0; i < numRatings; i++) {
+                buf = ensure(channel, buf, 4);
+                buf.putFloat((float) store.rating(i));
+            }
+            for (int i = 0; i < numRatings; i++) {
+                buf = ensure(channel, buf, 4);
+                buf.putInt(store.movieIdsById()[i]);
+            }
+            for (int i = 0; i < numRatings; i++) {
+                buf = ensure(channel, buf, 4);
+                buf.putFloat(store.ratingsById()[i]);
+            }
+
+            for (Map.Entry<Integer, String> movie: new TreeMap<>(movies).entrySet()) {
+                byte[] title = movie.getValue().getBytes(StandardCharsets.UTF_8);
+                buf = ensure(channel, buf, 8 + title.length);
+                buf.putInt(movie.getKey()).putInt(title.length);
+                if (title.length > buf.remaining()) {
+                    buf = ensure(channel, buf, BUFFER_SIZE);
+                    ByteBuffer large = ByteBuffer.wrap(title);
+                    while (large.hasRemaining()) {
+                        channel.write(large);
+                    }
+                } else {
+                    buf.put(title);
+                }
+            }
+
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Opens a snapshot file by mapping it into memory and adds its users and movie titles
+     * to the given (empty) UsersList and map. The users are backed by a RatingsStore built
+     * from bulk copies of the mapped rating columns. The counts of the header are checked
+     * against the size of the file before anything is allocated.
+     * @param filename name of the snapshot file
+     * @param users empty UsersList to fill
+     * @param movies map to fill with movie ids and titles
+     * @throws IOException if the file can not be read, is not a snapshot of this version,
+     *         or is truncated or corrupt
+     * @throws IllegalStateException if the UsersList is not empty
+     */
+    static void open(String filename, UsersList users, Map<Integer, String> movies) throws IOException {
+
+        if (users.size() > 0) {
+            throw new IllegalStateException("Can not open " + filename + " into a model that already has "
+                    + users.size() + " users");
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(filename + " is not a model snapshot");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buf.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a model snapshot");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + filename);
+            }
+            int numUsers = buf.getInt();
+            int numRatings = buf.getInt();
+            int numMovies = buf.getInt();
+            if (numUsers < 0 || numRatings < 0 || numMovies < 0) {
+                throw new IOException("Corrupt snapshot header in " + filename);
+            }
+            // users and offsets, four rating columns, then at least an id and a length per movie
+            checkRemaining(filename, buf, 4L * (2L * numUsers + 1) + 16L * numRatings + 8L * numMovies);
+
+            int[] userIds = new int[numUsers];
+            int[] offsets = new int[numUsers + 1];
+            int[] movieIds = new int[numRatings];
+            float[] ratings = new float[numRatings];
+            int[] movieIdsById = new int[numRatings];
+            float[] ratingsById = new float[numRatings];
+
+            buf.asIntBuffer().get(userIds);
+            buf.position(buf.position() + 4 * numUsers);
+            buf.asIntBuffer().get(offsets);
+            buf.position(buf.position() + 4 * (numUsers + 1));
+            checkOffsets(filename, offsets, numRatings);
+            buf.asIntBuffer().get(movieIds);
+            buf.position(buf.position() + 4 * numRatings);
+            buf.asFloatBuffer().get(ratings);
+            buf.position(buf.position() + 4 * numRatings);
+            buf.asIntBuffer().get(movieIdsById);
+            buf.position(buf.position() + 4 * numRatings);
+            buf.asFloatBuffer().get(ratingsById);
+            buf.position(buf.position() + 4 * numRatings);
+
+            Map<Integer, String> titles = new HashMap<>();
+            for (int i = 0; i < numMovies; i++) {
+                checkRemaining(filename, buf, 8);
+                int movieId = buf.getInt();
+                int length = buf.getInt();
+                if (length < 0) {
+                    throw new IOException("Corrupt title of movie " + movieId + " in " + filename);
+                }
+                checkRemaining(filename, buf, length);
+                byte[] title = new byte[length];
+                buf.get(title);
+                titles.put(movieId, new String(title, StandardCharsets.UTF_8));
+            }
+
+            // nothing is added until the whole file was read
+            movies.putAll(titles);
+            users.attachAll(userIds, RatingsStore.of(offsets, movieIds, ratings, movieIdsById, ratingsById));
+        }
+    }
+
+    /**
+     * Private helper method that checks that the snapshot has the given number of bytes
+     * left to read
+     * @param filename name of the snapshot file
+     * @param buf mapped snapshot, at the next section
+     * @param bytes number of bytes the section needs
+     * @throws IOException if the file is too short
+     */
+    private static void checkRemaining(String filename, ByteBuffer buf, long bytes) throws IOException {
+        if (bytes > buf.remaining()) {
+            throw new IOException("Truncated snapshot " + filename + ": " + bytes + " bytes needed at byte "
+                    + buf.position() + ", " + buf.remaining() + " left");
+        }
+    }
+
+    /**
+     * Private helper method that checks that the row offsets of the snapshot start at 0,
+     * never decrease and end at the number of ratings
+     * @param filename name of the snapshot file
+     * @param offsets row offsets read from the snapshot
+     * @param numRatings number of ratings in the header
+     * @throws IOException if the offsets do not describe the rating columns
+     */
+    private static void checkOffsets(String filename, int[] offsets, int numRatings) throws IOException {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != numRatings) {
+            throw new IOException("Corrupt row offsets in " + filename);
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                throw new IOException("Corrupt row offset " + i + " in " + filename);
+            }
+        }
+    }
+
+    /**
+     * Private helper method that writes the buffer to the channel if it does not have
+     * room for the given number of bytes
+     * @param channel channel of the snapshot file
+     * @param buf buffer being filled
+     * @param bytes number of bytes about to be put into the buffer
+     * @return the buffer, ready to be filled
+     * @throws IOException if the file can not be written
+     */
+    private static ByteBuffer ensure(FileChannel channel, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() < bytes) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+        return buf;
+    }
+}
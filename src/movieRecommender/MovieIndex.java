@@ -0,0 +1,55 @@
+package movieRecommender;
+
+/**
+ * MovieIndex. Gives every movie id a dense index (0, 1, 2, ... in the order the movies
+ * are first added), so that sets of movies can be stored as compact bitsets, see
+ * UserNode.hasSeen. Backed by an IntTable. The UsersList adds movies only while its
+ * ratings change (under the write lock of the MovieRecommender); queries only call get,
+ * so they never see the table while it grows.
+ */
+class MovieIndex {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final IntTable indices = new IntTable(DEFAULT_CAPACITY);
+
+    /**
+     * Returns the number of movies in the index, which is also the next index to be given
+     * @return number of movies
+     */
+    int size() {
+        return indices.size();
+    }
+
+    /**
+     * Returns the dense index of a movie
+     * @param movieId id of the movie
+     * @return index of the movie, or -1 if it was never added
+     */
+    int get(int movieId) {
+        return indices.get(movieId);
+    }
+
+    /**
+     * Returns the dense index of a movie, giving it the next free index if it has none.
+     * Must not run at the same time as any other call on the index.
+     * @param movieId id of the movie
+     * @return index of the movie
+     */
+    int add(int movieId) {
+        int index = indices.get(movieId);
+        if (index >= 0) {
+            return index;
+        }
+        index = indices.size();
+        indices.put(movieId, index);
+        return index;
+    }
+
+    /**
+     * Returns the approximate number of bytes of heap used by the index
+     * @return size in bytes
+     */
+    long sizeInBytes() {
+        return indices.sizeInBytes();
+    }
+}
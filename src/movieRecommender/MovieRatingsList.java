@@ -1,7 +1,9 @@
 package movieRecommender;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 import java.lang.Math;
 
 
@@ -12,10 +14,35 @@ import java.lang.Math;
  * Has various methods to manipulate the list.
  * Stores only the head of the list.
  * The list is sorted by rating (from highest to lowest).
+ *
+ * Once all the data is loaded, the list can be backed by a range of a shared
+ * RatingsStore instead of nodes (see UsersList.compact). Read-only methods work
+ * directly on the store; methods that change the list first copy the range back
+ * into nodes.
  */
 public class MovieRatingsList implements Iterable<MovieRatingNode> {
 
+	/** Orders nodes the way insertByRating does: by rating, then by movie id, both from highest to lowest */
+	private static final Comparator<MovieRatingNode> BY_RATING = (a, b) -> {
+		if (a.getMovieRating() != b.getMovieRating()) {
+			return Double.compare(b.getMovieRating(), a.getMovieRating());
+		}
+		return Integer.compare(b.getMovieId(), a.getMovieId());
+	};
+
 	private MovieRatingNode head;
+	private int size;
+	private double ratingSum; // sum and sum of squares of all ratings, kept up to date by every change
+	private double ratingSumOfSquares;
+	private RatingsStore store;
+	private int from;
+	private int to;
+	private volatile int[] idsById; // the ratings sorted by movie id, used by computeSimilarity; set last
+	private float[] ratingsById;
+	private int byIdFrom;
+	private int byIdTo;
+	private int version; // incremented by every change, so cached results can tell they are stale
+	private AtomicLong modelVersion; // version of the UsersList the list belongs to, null if none
 
 	/**
 	 * Private data member stores the lead of the custom linked list as a dummy node.
@@ -25,6 +52,133 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 
 	}
 
+	/**
+	 * Returns the number of ratings in the list
+	 * @return number of ratings
+	 */
+	public int size() {
+		return store != null ? to - from : size;
+	}
+
+	/**
+	 * Returns the sum of all ratings in the list
+	 * @return sum of ratings
+	 */
+	public double getRatingSum() {
+		return ratingSum;
+	}
+
+	/**
+	 * Returns the sum of the squares of all ratings in the list
+	 * @return sum of squared ratings
+	 */
+	public double getRatingSumOfSquares() {
+		return ratingSumOfSquares;
+	}
+
+	/**
+	 * Returns the average rating of the list, or 0 if the list is empty
+	 * @return mean rating
+	 */
+	public double getMeanRating() {
+		return size == 0 ? 0 : ratingSum / size;
+	}
+
+	/**
+	 * Returns the Euclidean norm of the ratings, the square root of the sum of squares
+	 * @return norm of the ratings
+	 */
+	public double getRatingNorm() {
+		return Math.sqrt(ratingSumOfSquares);
+	}
+
+	/**
+	 * Returns the Euclidean norm of the ratings after subtracting the mean rating from each
+	 * @return norm of the mean-centered ratings
+	 */
+	public double getCenteredRatingNorm() {
+		return size == 0 ? 0 : Math.sqrt(Math.max(0, ratingSumOfSquares - ratingSum * ratingSum / size));
+	}
+
+	/**
+	 * Private helper method that adds a rating to (or removes it from) the count,
+	 * sum and sum of squares of the list
+	 * @param rating rating that was added or removed
+	 * @param sign 1 if the rating was added, -1 if it was removed
+	 */
+	private void count(double rating, int sign) {
+		size += sign;
+		ratingSum += sign * rating;
+		ratingSumOfSquares += sign * rating * rating;
+	}
+
+	/**
+	 * Backs this list by the given range of the store and drops the nodes of the list.
+	 * The range must hold the same ratings, in the same order, as the list, so the
+	 * version of the list does not change.
+	 * @param store shared RatingsStore
+	 * @param from first position of this list in the store, inclusive
+	 * @param to last position of this list in the store, exclusive
+	 */
+	void attach(RatingsStore store, int from, int to) {
+		this.store = store;
+		this.from = from;
+		this.to = to;
+		this.size = 0;
+		this.ratingSum = 0;
+		this.ratingSumOfSquares = 0;
+		for (int i = from; i < to; i++) {
+			count(store.rating(i), 1);
+		}
+		head.setNext(null);
+		idsById = null;
+		ratingsById = null;
+	}
+
+	/**
+	 * Backs this list by the given row of the store, see attach. The list also uses
+	 * the ratings of the row sorted by movie id that the store keeps.
+	 * @param store shared RatingsStore
+	 * @param row row of this list in the store
+	 */
+	void attachRow(RatingsStore store, int row) {
+		attach(store, store.rowStart(row), store.rowEnd(row));
+		ratingsById = store.ratingsById();
+		byIdFrom = store.rowStart(row);
+		byIdTo = store.rowEnd(row);
+		idsById = store.movieIdsById();
+	}
+
+	/**
+	 * Private helper method that copies the ratings of a store-backed list back into
+	 * nodes, so the list can be modified. Does nothing if the list uses nodes already.
+	 */
+	private void thaw() {
+		if (store == null) {
+			return;
+		}
+
+		MovieRatingNode tail = head;
+		for (int i = from; i < to; i++) {
+			MovieRatingNode node = new MovieRatingNode(store.movieId(i), store.rating(i));
+			tail.setNext(node);
+			tail = node;
+		}
+		store = null;
+	}
+
+	/**
+	 * Private helper method that creates a list backed by a sub-range of the store of this list.
+	 * @param begin first position, inclusive
+	 * @param end last position, exclusive
+	 * @return new MovieRatingsList that shares the store of this list
+	 */
+	private MovieRatingsList view(int begin, int end) {
+		MovieRatingsList result = new MovieRatingsList();
+		result.attach(store, begin, end);
+		return result;
+	}
+
 	/**
 	 * Sets the rating for a given movie using its movie id.
 	 * The position of the node within the list remains sorted by rating (from highest to lowest).
@@ -34,6 +188,7 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 	 */
 	public void setRating(int movieId, double newRating) {
 
+		thaw();
 		MovieRatingNode previous = head;
 		MovieRatingNode current = head.next();
 
@@ -48,6 +203,8 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 		} else {
 
 			previous.setNext(current.next());
+			count(current.getMovieRating(), -1);
+			changed();
 			insertByRating(movieId, newRating);
 		}
 	}
@@ -60,10 +217,19 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
 	public double getRating(int movieId) {
 
+		if (store != null) {
+			for (int i = from; i < to; i++) {
+				if (store.movieId(i) == movieId) {
+					return store.rating(i);
+				}
+			}
+			return -1;
+		}
+
 		MovieRatingNode current = head.next();
 		double result;
 
-		while(current.getMovieId() != movieId) {
+		while(current != null && current.getMovieId() != movieId) {
 			current = current.next();
 		}
 
@@ -85,7 +251,10 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
 	public void insertByRating(int movieId, double rating) {
 
+		thaw();
+		changed();
 		MovieRatingNode newNode = new MovieRatingNode(movieId, rating);
+		count(newNode.getMovieRating(), 1);
 		MovieRatingNode previous = this.head;
 		MovieRatingNode current = previous.next();
 
@@ -122,6 +291,41 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 		}
 	}
 
+	/**
+	 * Inserts several ratings at once. The result is the same as calling insertByRating
+	 * for each of them, but the new ratings are sorted once and merged into the list in
+	 * a single pass, instead of walking the list for every rating.
+	 * @param movieIds ids of the movies
+	 * @param ratings ratings of the movies
+	 * @param count number of ratings to insert from the arrays
+	 */
+	public void insertAllByRating(int[] movieIds, double[] ratings, int count) {
+
+		thaw();
+		changed();
+		MovieRatingNode[] nodes = new MovieRatingNode[count];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = new MovieRatingNode(movieIds[i], ratings[i]);
+			count(nodes[i].getMovieRating(), 1);
+		}
+		Arrays.sort(nodes, BY_RATING);
+
+		MovieRatingNode previous = head;
+		MovieRatingNode current = head.next();
+
+		for (MovieRatingNode newNode: nodes) {
+			while (current != null && (newNode.getMovieRating() < current.getMovieRating()
+					|| (newNode.getMovieRating() == current.getMovieRating()
+					&& newNode.getMovieId() < current.getMovieId()))) {
+				previous = current;
+				current = current.next();
+			}
+			newNode.setNext(current);
+			previous.setNext(newNode);
+			previous = newNode;
+		}
+	}
+
     /**
      * Computes the similarity between two lists of ratings using Pearson's correlation coefficient.
      * @param otherList another MovieRatingList
@@ -129,53 +333,115 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
     public double computeSimilarity(MovieRatingsList otherList) {
 
-		MovieRatingNode currentY = otherList.head.next();
-		MovieRatingNode currentX = this.head.next();
-		HashMap<Integer, Double> userMap = new HashMap<>();
-
-		int id = 0;
-		int n = 0;
-		double sumX = 0;
-		double sumY = 0;
-		double sumX2 = 0;
-		double sumY2 = 0;
-		double sumXY = 0;
-		double numerator = 0;
-		double denominator = 0;
-		double denominatorTerm1 = 0;
-		double denominatorTerm2 = 0;
-		double similarity = 0;
-
-		while (currentX != null) {
-			userMap.put(currentX.getMovieId(), currentX.getMovieRating());
-			currentX = currentX.next();
-		}
-
-		currentX = this.head.next();
-
-		while (currentY != null && currentX != null) {
-			id = currentY.getMovieId();
-			if (userMap.containsKey(id)) {
-				n++;
-				sumX += userMap.get(id);
-				sumY += currentY.getMovieRating();
-				sumXY += (currentY.getMovieRating() * userMap.get(id));
-				sumX2 += Math.pow(userMap.get(id), 2);
-				sumY2 += Math.pow(currentY.getMovieRating(), 2);
+		// with fewer than two ratings, or all ratings the same, the coefficient is never defined
+		if (this.isConstant() || otherList.isConstant()) {
+			return Double.NaN;
+		}
+
+		this.sortById();
+		otherList.sortById();
+
+		return SimilarityKernel.pearson(this.idsById, this.ratingsById, this.byIdFrom, this.byIdTo,
+				otherList.idsById, otherList.ratingsById, otherList.byIdFrom, otherList.byIdTo);
+    }
+
+	/**
+	 * Private helper method that makes sure idsById and ratingsById hold the ratings of
+	 * this list sorted by movie id. Lists backed by a whole row of a store use the sorted
+	 * columns of the store; other lists build their own copy, which is kept until the
+	 * list changes.
+	 */
+	private void sortById() {
+		if (idsById != null) {
+			return;
+		}
+
+		int n = size();
+		int[] ids = new int[n];
+		float[] ratings = new float[n];
+		int i = 0;
+		for (MovieRatingNode x: this) {
+			ids[i] = x.getMovieId();
+			ratings[i] = (float) x.getMovieRating();
+			i++;
+		}
+		int[] sortedIds = new int[n];
+		float[] sortedRatings = new float[n];
+		RatingsStore.sortById(ids, ratings, 0, n, sortedIds, sortedRatings, 0);
+
+		ratingsById = sortedRatings;
+		byIdFrom = 0;
+		byIdTo = n;
+		idsById = sortedIds;
+	}
+
+	/**
+	 * Receives the ratings of a list, see forEachRating
+	 */
+	interface RatingVisitor {
+		/**
+		 * Called for every rating of the list
+		 * @param movieId id of the movie
+		 * @param rating rating of the movie
+		 */
+		void visit(int movieId, double rating);
+	}
+
+	/**
+	 * Passes every rating of the list, from highest to lowest, to the given visitor.
+	 * Unlike the iterator, this does not create a node per rating for store-backed lists.
+	 * @param visitor receives the ratings
+	 */
+	void forEachRating(RatingVisitor visitor) {
+		if (store != null) {
+			for (int i = from; i < to; i++) {
+				visitor.visit(store.movieId(i), store.rating(i));
 			}
-			currentY = currentY.next();
+			return;
 		}
+		for (MovieRatingNode current = head.next(); current != null; current = current.next()) {
+			visitor.visit(current.getMovieId(), current.getMovieRating());
+		}
+	}
 
-		denominatorTerm1 = Math.sqrt((n*sumX2) - Math.pow(sumX, 2));
-		denominatorTerm2 = Math.sqrt((n*sumY2) - Math.pow(sumY, 2));
-		denominator = denominatorTerm1 * denominatorTerm2;
-		numerator = (n*sumXY) - (sumX * sumY);
+	/**
+	 * Private helper method that returns true if the list has fewer than two ratings
+	 * or all of its ratings are equal, using the cached sums.
+	 * @return true if the ratings of the list have no variance
+	 */
+	private boolean isConstant() {
+		return size < 2 || size * ratingSumOfSquares == ratingSum * ratingSum;
+	}
 
-		similarity = numerator/denominator;
+	/**
+	 * Private helper method called whenever the ratings of the list change.
+	 * Drops the copy of the ratings sorted by movie id.
+	 */
+	private void changed() {
+		version++;
+		if (modelVersion != null) {
+			modelVersion.incrementAndGet();
+		}
+		idsById = null;
+		ratingsById = null;
+	}
 
-		return similarity;
+	/**
+	 * Returns a number that changes whenever the ratings of the list change
+	 * @return version of the ratings
+	 */
+	int version() {
+		return version;
+	}
 
-    }
+	/**
+	 * Sets the version of the UsersList the list belongs to, which every change to the
+	 * list increments as well
+	 * @param modelVersion version of all the ratings of the UsersList
+	 */
+	void setModelVersion(AtomicLong modelVersion) {
+		this.modelVersion = modelVersion;
+	}
 
     /**
      * Returns a sublist of the list within the range: egRating to endRating, inclusive.
@@ -186,6 +452,21 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
 	public MovieRatingsList sublist(int begRating, int endRating) {
 
+		if (store != null) {
+			if (from == to) {
+				return null;
+			}
+			int begin = from;
+			while (begin < to && store.rating(begin) > endRating) {
+				begin++;
+			}
+			int end = begin;
+			while (end < to && store.rating(end) >= begRating) {
+				end++;
+			}
+			return view(begin, end);
+		}
+
 		MovieRatingsList result = new MovieRatingsList();
 		MovieRatingNode previous = this.head;
 		MovieRatingNode current = previous.next();
@@ -210,6 +491,13 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 	/** Traverses the list and prints the list in the following format:
 	 *  movieId:rating; movieId:rating; movieId:rating;  */
 	public void print() {
+		if (store != null) {
+			for (int i = from; i < to; i++) {
+				System.out.println(store.movieId(i) + ":" + store.rating(i) + "; ");
+			}
+			return;
+		}
+
 		MovieRatingNode previous = this.head;
 		MovieRatingNode current = previous.next();
 
@@ -225,6 +513,14 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 	 */
 	public MovieRatingNode getMiddleNode() {
 
+		if (store != null) {
+			if (from == to) {
+				return null;
+			}
+			int middle = from + (to - from - 1) / 2;
+			return new MovieRatingNode(store.movieId(middle), store.rating(middle));
+		}
+
 		MovieRatingNode previous = this.head;
 		MovieRatingNode currentFast = previous.next();
 		MovieRatingNode currentSlow = previous.next();
@@ -246,6 +542,13 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
 	public double getMedianRating() {
 
+		if (store != null) {
+			if (from == to) {
+				return -1;
+			}
+			return store.rating(from + (to - from - 1) / 2);
+		}
+
 		MovieRatingNode previous = this.head;
 		MovieRatingNode currentFast = previous.next();
 		MovieRatingNode currentSlow = previous.next();
@@ -267,6 +570,10 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
 	public MovieRatingsList getNBestRankedMovies(int n) {
 
+		if (store != null) {
+			return view(from, from + Math.max(0, Math.min(n, to - from)));
+		}
+
 		int count = 0;
 		MovieRatingsList bestRanked = new MovieRatingsList();
 		MovieRatingNode previous = this.head;
@@ -289,6 +596,10 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
 	public MovieRatingsList getNWorstRankedMovies(int n) {
 
+		if (store != null) {
+			return view(to - Math.max(0, Math.min(n, to - from)), to);
+		}
+
 		MovieRatingsList result = new MovieRatingsList();
 		MovieRatingNode previous = this.head;
 		MovieRatingNode ahead = previous.next();
@@ -321,10 +632,13 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
      */
 	public MovieRatingsList reverse(MovieRatingNode h) {
 
+		thaw();
+		changed();
 		MovieRatingNode dummy = new MovieRatingNode(-2, 3.0);
         MovieRatingsList r = new MovieRatingsList();
         MovieRatingNode previous = head;
         MovieRatingNode current = previous.next();
+        MovieRatingNode first = current;
         MovieRatingNode next = current.next();
 
         if (current == null) {
@@ -342,7 +656,11 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
         dummy.setNext(current);
 
         r.head = dummy;
+        r.size = size;
+        r.ratingSum = ratingSum;
+        r.ratingSumOfSquares = ratingSumOfSquares;
         h.setNext(null);
+        first.setNext(null);
 
 		return r;
 	}
@@ -354,6 +672,9 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 	 */
 	public Iterator<MovieRatingNode> iterator() {
 
+		if (store != null) {
+			return new StoreIterator();
+		}
 		return new MovieRatingsListIterator(0);
 	}
 
@@ -414,4 +735,47 @@ public class MovieRatingsList implements Iterable<MovieRatingNode> {
 			return current;
 		}
 	}
+
+	/**
+	 * Inner class: StoreIterator
+	 * The iterator for a list backed by a RatingsStore. Returns a new MovieRatingNode
+	 * for every rating in the range of the list; changing these nodes does not change the list.
+	 */
+	private class StoreIterator implements Iterator<MovieRatingNode> {
+
+		int current;
+
+		/**
+		 * Starts the iteration at the first rating of the list
+		 */
+		public StoreIterator() {
+			current = from;
+		}
+
+		/**
+		 * Returns true if there are more ratings in the range of the list, false otherwise
+		 * @return
+		 */
+		@Override
+		public boolean hasNext() {
+			return current < to;
+		}
+
+		/**
+		 * Returns the next rating of the list as a node
+		 * @return
+		 */
+		@Override
+		public MovieRatingNode next() {
+
+			if (hasNext() == false) {
+				System.out.println("No next element");
+				return null;
+			}
+
+			MovieRatingNode node = new MovieRatingNode(store.movieId(current), store.rating(current));
+			current++;
+			return node;
+		}
+	}
 }
@@ -1,10 +1,24 @@
 package movieRecommender;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /** MovieRecommender. A class that is responsible for:
     - Reading movie and ratings data from the input files and loading it into several data structures.
@@ -14,8 +28,41 @@ import java.util.HashMap;
 
 
 public class MovieRecommender {
+    /** Number of query results kept by default, see setResultCacheSize */
+    private static final int DEFAULT_CACHED_RESULTS = 1024;
+    /** Number of users of a batch that one task works on */
+    private static final int BATCH_USERS_PER_TASK = 32;
+    /** Seed of the random initial factors of the latent factor model, so training is repeatable */
+    private static final long FACTOR_SEED = 42;
+    /** Seed of the hyperplanes of the LSH index */
+    private static final long LSH_SEED = 7;
+
+    private static final Metrics.Histogram LOAD_TIME = Metrics.histogram("loadDataNanos");
+    private static final Metrics.Histogram SNAPSHOT_LOAD_TIME = Metrics.histogram("loadSnapshotNanos");
+    private static final Metrics.Counter RATINGS_LOADED = Metrics.counter("ratingsLoaded");
+    private static final Metrics.Gauge LOAD_RATE = Metrics.gauge("ratingsLoadedPerSecond");
+    private static final Metrics.Gauge USERS = Metrics.gauge("users");
+    private static final Metrics.Gauge RATINGS = Metrics.gauge("ratings");
+    private static final Metrics.Gauge MOVIES = Metrics.gauge("movies");
+    private static final Metrics.Gauge MODEL_BYTES = Metrics.gauge("modelBytes");
+    private static final Metrics.Histogram QUERY_TIME = Metrics.histogram("recommendationsNanos");
+    private static final Metrics.Histogram SEARCH_TIME = Metrics.histogram("similarUserSearchNanos");
+    private static final Metrics.Counter RATINGS_INGESTED = Metrics.counter("ratingsIngested");
+    private static final Metrics.Histogram INGEST_TIME = Metrics.histogram("ingestBatchNanos");
+
     private UsersList usersData;
     private HashMap<Integer, String> movieMap;
+    private ForkJoinPool similarityPool; // null to find similar users on the calling thread
+    private int minOverlap = 2; // only compare with users who rated at least this many of the same movies
+    private NeighborTable neighborTable; // precomputed neighbors of every user, null to compute them per query
+    private ResultCache results = new ResultCache(DEFAULT_CACHED_RESULTS);
+    private ItemNeighbors itemNeighbors; // model of the item-based recommender, null until computed
+    private FactorModel factorModel; // latent factor model, null until trained
+    private LshIndex lshIndex; // approximate search for similar users, null to search exactly
+    private BitSet staleNeighbors = new BitSet(); // rows of the neighbor table whose user got new ratings
+    private RatingsFollower follower; // tails a ratings file for addRatings, null if none is followed
+    // queries hold the read lock, anything that changes the users holds the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     /**
      * Stores two private data members
@@ -28,14 +75,428 @@ public class MovieRecommender {
     }
 
     /**
-     * Reads user ratings from the file and calls several private methods
+     * Reads user ratings from the file and calls several private methods.
+     * Once everything is loaded, the ratings are compacted into a single RatingsStore.
      * @param movieFilename name of the file with movie info
      * @param ratingsFilename name of the file with ratings info
      */
     public void loadData(String movieFilename, String ratingsFilename) {
 
-        loadMovies(movieFilename);
-        loadRatings(ratingsFilename);
+        lock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            loadMovies(movieFilename);
+            long ratings = loadRatings(ratingsFilename);
+            usersData.compact();
+            loaded(ratings, System.nanoTime() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads movie and rating data from the files using the given number of threads.
+     * The movies file is loaded while the ratings file is split into ranges that are
+     * parsed in parallel. The partial results are merged in file order, so the loaded
+     * data is the same as with loadData, whatever the number of threads.
+     * @param movieFilename name of the file with movie info
+     * @param ratingsFilename name of the file with ratings info
+     * @param threads number of threads to use
+     */
+    public void loadData(String movieFilename, String ratingsFilename, int threads) {
+
+        long startTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        lock.writeLock().lock();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(ratingsFilename), StandardOpenOption.READ)) {
+
+            ForkJoinTask<?> movies = pool.submit(() -> loadMovies(movieFilename));
+            long[] bounds = RatingsParser.split(channel, RatingsParser.dataStart(channel), channel.size(), threads);
+            List<ForkJoinTask<UsersList>> parts = new ArrayList<>();
+            LongAdder ratings = new LongAdder();
+
+            for (int i = 0; i < threads; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                parts.add(pool.submit(() -> {
+                    UsersList part = new UsersList();
+                    ratings.add(RatingsParser.parse(channel, start, end, (userId, movieId, rating, timestamp) ->
+                            part.insertBuffered(userId, movieId, rating)));
+                    return part;
+                }));
+            }
+
+            for (ForkJoinTask<UsersList> part: parts) {
+                usersData.mergeBuffered(part.get());
+            }
+            usersData.compact();
+            movies.get();
+            loaded(ratings.sum(), System.nanoTime() - startTime);
+
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.out.println("File Input Unsuccessful");
+        } finally {
+            lock.writeLock().unlock();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Sets the pool of threads used to find the most similar user when computing
+     * recommendations. With a pool, the users are compared in parallel; the results
+     * are the same as without one.
+     * @param pool pool of threads to use, or null to use only the calling thread
+     */
+    public void setSimilarityPool(ForkJoinPool pool) {
+        similarityPool = pool;
+    }
+
+    /**
+     * Sets a cache for the similarity scores of pairs of users, so that repeated queries
+     * for the same users do not compute them again. Its hit and miss counters show how
+     * well it is sized for the queries.
+     * @param cache cache of similarity scores, or null to compute every score
+     */
+    public void setSimilarityCache(SimilarityCache cache) {
+        usersData.setSimilarityCache(cache);
+    }
+
+    /**
+     * Sets how many results of findRecommendations and findAntiRecommendations are kept.
+     * A repeated query is answered from the kept result as long as no ratings changed.
+     * @param maxEntries maximum number of results to keep, 0 to turn the cache off
+     */
+    public void setResultCacheSize(int maxEntries) {
+        results = new ResultCache(maxEntries);
+    }
+
+    /**
+     * Returns the number of queries answered from the result cache
+     * @return number of hits
+     */
+    public long getResultCacheHits() {
+        return results.hits();
+    }
+
+    /**
+     * Returns the number of queries that were not in the result cache and were computed
+     * @return number of misses
+     */
+    public long getResultCacheMisses() {
+        return results.misses();
+    }
+
+    /**
+     * Sets the minimum number of movies another user must have rated in common with the
+     * user to be considered when looking for similar users. The default of 2 skips only
+     * users whose similarity is not defined, so it does not change any results; higher
+     * values make queries cheaper but may skip the most similar user.
+     * @param minOverlap minimum number of movies in common
+     */
+    public void setMinimumOverlap(int minOverlap) {
+        this.minOverlap = minOverlap;
+        results.clear();
+    }
+
+    /**
+     * Private helper method that finds the most similar user among the users that share
+     * at least minOverlap movies with the user, in parallel if a pool is set
+     * @param userid id of the user
+     * @return the most similar user
+     */
+    private UserNode findMostSimilarUser(int userid) {
+        return findMostSimilarUser(userid, similarityPool);
+    }
+
+    /**
+     * Private helper method that finds the most similar user like findMostSimilarUser(int),
+     * using the given pool instead of the similarity pool, and records how long it took
+     * @param userid id of the user
+     * @param pool pool of threads to use, or null to use only the calling thread
+     * @return the most similar user
+     */
+    private UserNode findMostSimilarUser(int userid, ForkJoinPool pool) {
+        QueryEvents.SimilarUserSearch event = new QueryEvents.SimilarUserSearch();
+        event.begin();
+        long start = System.nanoTime();
+        UserNode mostSimilar = searchMostSimilarUser(userid, pool);
+        SEARCH_TIME.record(System.nanoTime() - start);
+
+        if (event.shouldCommit()) {
+            UserNode user = usersData.get(userid);
+            event.userId = userid;
+            event.method = neighborRow(userid) >= 0 ? "neighborTable"
+                    : lshIndex != null ? "lsh" : pool != null ? "parallelScan" : "scan";
+            event.mostSimilarUserId = mostSimilar == null ? 0 : mostSimilar.getId();
+            event.ratings = user.getRatingCount();
+            event.overlap = mostSimilar == null ? 0 : overlap(user, mostSimilar);
+            event.commit();
+        }
+        return mostSimilar;
+    }
+
+    /**
+     * Private helper method that counts the movies rated by both users
+     * @param user first user
+     * @param other second user
+     * @return number of movies in common
+     */
+    private int overlap(UserNode user, UserNode other) {
+        MovieIndex movies = usersData.movieIndex();
+        int[] count = new int[1];
+        other.getMovieRatings().forEachRating((movieId, rating) -> {
+            if (user.hasSeen(movies, movieId)) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Private helper method that finds the most similar user for findMostSimilarUser,
+     * through the neighbor table, the LSH index or a scan of the users
+     * @param userid id of the user
+     * @param pool pool of threads to use, or null to use only the calling thread
+     * @return the most similar user
+     */
+    private UserNode searchMostSimilarUser(int userid, ForkJoinPool pool) {
+        int row = neighborRow(userid);
+        if (row >= 0) {
+            return neighborTable.count(row) == 0 ? null : usersData.get(neighborTable.neighbor(row, 0));
+        }
+        if (lshIndex != null) {
+            return lshIndex.findMostSimilarUser(usersData.get(userid));
+        }
+        if (pool != null) {
+            return usersData.findMostSimilarUser(userid, minOverlap, pool);
+        }
+        return usersData.findMostSimilarUser(userid, minOverlap);
+    }
+
+    /**
+     * Builds a locality-sensitive hashing index of the loaded users. While it is set,
+     * findRecommendations, findAntiRecommendations and the batch mode only compare the
+     * user with the candidates the index returns instead of all users (a neighbor table,
+     * if one is loaded, is still used first). The answer is then approximate: use
+     * measureLshRecall to see how often it is the exact most similar user. The minimum
+     * overlap is not applied to the candidates.
+     * More tables and probes raise the recall, more bits lower the number of candidates.
+     * @param tables number of hash tables
+     * @param bits number of bits of the signature of every table, from 1 to 31
+     * @param probes number of neighboring buckets also read in every table, from 0 to bits
+     */
+    public void buildLshIndex(int tables, int bits, int probes) {
+        ForkJoinPool pool = similarityPool != null ? similarityPool : ForkJoinPool.commonPool();
+        lock.readLock().lock();
+        try {
+            lshIndex = LshIndex.build(usersData, tables, bits, probes, LSH_SEED, pool);
+        } finally {
+            lock.readLock().unlock();
+        }
+        results.clear();
+    }
+
+    /**
+     * Removes the LSH index, so similar users are found exactly again
+     */
+    public void clearLshIndex() {
+        lshIndex = null;
+        results.clear();
+    }
+
+    /**
+     * Measures the LSH index against the exact search: for every given user, finds the
+     * most similar user with both and counts how often they agree. Prints the recall,
+     * the average number of candidates per query and the time taken by both searches.
+     * @param userIds ids of the users to query
+     * @return fraction of the users for which the index finds the exact most similar user,
+     *         or NaN if there is no index
+     */
+    public double measureLshRecall(int[] userIds) {
+
+        if (lshIndex == null) {
+            return Double.NaN;
+        }
+        int found = 0;
+        long candidates = 0;
+        long lshTime = 0;
+        long exactTime = 0;
+
+        lock.readLock().lock();
+        try {
+            for (int userid: userIds) {
+                UserNode user = usersData.get(userid);
+                long start = System.nanoTime();
+                UserNode approximate = lshIndex.findMostSimilarUser(user);
+                long middle = System.nanoTime();
+                UserNode exact = usersData.findMostSimilarUser(userid, minOverlap);
+                long end = System.nanoTime();
+
+                lshTime += middle - start;
+                exactTime += end - middle;
+                candidates += lshIndex.candidates(user).length;
+                if (approximate == exact) {
+                    found++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        double recall = userIds.length == 0 ? 1 : (double) found / userIds.length;
+        System.out.printf("LSH recall %.3f, %.1f candidates per query of %d users, %.3f ms per query vs %.3f ms exact%n",
+                recall, (double) candidates / Math.max(1, userIds.length), usersData.size(),
+                lshTime / 1e6 / Math.max(1, userIds.length), exactTime / 1e6 / Math.max(1, userIds.length));
+        return recall;
+    }
+
+    /**
+     * Computes the k most similar users of every user in one offline job and writes
+     * them to a neighbor table file. Every pair of users is compared only once, using
+     * the similarity pool (or the common pool if none is set). The table is kept, so
+     * the following queries find similar users in constant time instead of scanning
+     * all users. Only the compaction of the ratings blocks queries; the comparisons
+     * run under the read lock, and the previous table is used until the new one is set.
+     * The rows of users whose ratings change with addRatings are no longer used;
+     * compute or load the table again.
+     * @param k number of neighbors to keep per user
+     * @param filename name of the neighbor table file
+     */
+    public void computeNeighborTable(int k, String filename) {
+
+        ForkJoinPool pool = similarityPool != null ? similarityPool : ForkJoinPool.commonPool();
+        NeighborTable table;
+        long version;
+        compactAndReadLock();
+        try {
+            version = usersData.version();
+            table = AllPairsSimilarity.compute(usersData, k, pool);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            neighborTable = table;
+            // users changed by addRatings since the compute keep their rows marked stale
+            if (usersData.version() == version) {
+                staleNeighbors.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        results.clear();
+
+        try {
+            table.save(filename);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("File Output Unsuccessful");
+        }
+    }
+
+    /**
+     * Private helper method that compacts the ratings under the write lock, then
+     * downgrades it to the read lock, so a long computation over the compacted ratings
+     * does not block queries. The caller must unlock the read lock.
+     */
+    private void compactAndReadLock() {
+        lock.writeLock().lock();
+        try {
+            usersData.compact();
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads a neighbor table file written by computeNeighborTable for the same data.
+     * Following queries use it to find similar users in constant time.
+     * @param filename name of the neighbor table file
+     */
+    public void loadNeighborTable(String filename) {
+
+        try {
+            NeighborTable table = NeighborTable.load(filename);
+            lock.writeLock().lock();
+            try {
+                neighborTable = table;
+                staleNeighbors.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            results.clear();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("File Input Unsuccessful");
+        }
+    }
+
+    /**
+     * Private helper method that finds the row of the neighbor table for a user. Users
+     * added or changed by addRatings since the table was made have no row.
+     * @param userid id of the user
+     * @return row of the user, or -1 if there is no table or it does not match the loaded users
+     */
+    private int neighborRow(int userid) {
+        if (neighborTable == null) {
+            return -1;
+        }
+        UserNode user = usersData.get(userid);
+        if (user == null || user.position >= neighborTable.rows()
+                || neighborTable.userId(user.position) != userid || staleNeighbors.get(user.position)) {
+            return -1;
+        }
+        return user.position;
+    }
+
+    /**
+     * Saves the loaded users, ratings and movie titles to a binary snapshot file,
+     * which loadSnapshot can open without parsing and sorting the csv files again.
+     * @param filename name of the snapshot file
+     */
+    public void saveSnapshot(String filename) {
+
+        lock.writeLock().lock();
+        try {
+            usersData.compact();
+            ModelSnapshot.save(filename, usersData.store(), usersData.userIds(), movieMap);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("File Output Unsuccessful");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads users, ratings and movie titles from a snapshot file written by saveSnapshot,
+     * instead of reading the csv files with loadData. Only a recommender that has no
+     * data loaded yet can open a snapshot.
+     * @param filename name of the snapshot file
+     * @throws IllegalStateException if users were already loaded
+     */
+    public void loadSnapshot(String filename) {
+
+        lock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            ModelSnapshot.open(filename, usersData, movieMap);
+            SNAPSHOT_LOAD_TIME.record(System.nanoTime() - start);
+            updateModelMetrics();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("File Input Unsuccessful");
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /** Private helper method that loads information about movie ids and titles from the given file.
@@ -81,33 +542,110 @@ public class MovieRecommender {
 
     /**
      * Private helper method that load's user movie ratings for each movie from the file
-     * and stores it into the UsersList
+     * and stores it into the UsersList.
+     * The file is read by RatingsParser, which decodes each line without creating any objects.
+     * Ratings are buffered per user and each user's list is built once at the end.
      * @param ratingsFilename name of the file that contains ratings
+     * @return number of ratings read
      */
-    private void loadRatings(String ratingsFilename) {
+    private long loadRatings(String ratingsFilename) {
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(ratingsFilename))) {
+        try {
+            long ratings = RatingsParser.parse(ratingsFilename, (userId, movieId, rating, timestamp) ->
+                    usersData.insertBuffered(userId, movieId, rating));
+            usersData.flushBuffered();
+            return ratings;
 
-            int docLines = 0;
-            String currentLine;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("File Input Unsuccessful");
+            return 0;
+        }
+    }
 
-            while ((currentLine = reader.readLine()) != null) {
-                docLines++;
+    /**
+     * Private helper method that records the metrics of a call to loadData
+     * @param ratings number of ratings read
+     * @param nanos time the call took, in nanoseconds
+     */
+    private void loaded(long ratings, long nanos) {
+        LOAD_TIME.record(nanos);
+        RATINGS_LOADED.add(ratings);
+        LOAD_RATE.set((long) (ratings * 1e9 / Math.max(1, nanos)));
+        updateModelMetrics();
+    }
 
-                if (docLines > 1) {
+    /**
+     * Private helper method that sets the gauges that describe the loaded model
+     */
+    private void updateModelMetrics() {
+        USERS.set(usersData.size());
+        RATINGS.set(usersData.store() == null ? 0 : usersData.store().size());
+        MOVIES.set(movieMap.size());
+        MODEL_BYTES.set(usersData.sizeInBytes());
+    }
 
-                    String[] info = currentLine.split(",");
-                    String userId = info[0];
-                    String movieId = info[1];
-                    String movieRating = info[2];
+    /**
+     * Adds a batch of ratings to the loaded data without loading it again. A rating of a
+     * movie the user has already rated replaces the old one (see UsersList.upsert), and
+     * users that are not loaded yet are added. The LSH index is updated for the changed
+     * users only, and the result and similarity caches drop what the new ratings make
+     * stale, so the next query sees them. The rows of the neighbor table of the changed
+     * users are no longer used until the table is computed or loaded again (other rows
+     * may still name a changed user, with its old score). The item-based and latent
+     * factor models are not updated.
+     * @param userIds ids of the users
+     * @param movieIds ids of the movies, in the same order
+     * @param ratings ratings given by the users to the movies, in the same order
+     * @return number of new ratings, the others replaced earlier ratings
+     */
+    public int addRatings(int[] userIds, int[] movieIds, double[] ratings) {
 
-                    int user = Integer.parseInt(userId);
-                    int movid = Integer.parseInt(movieId);
-                    double rate = Double.parseDouble(movieRating);
+        if (userIds.length != movieIds.length || userIds.length != ratings.length) {
+            throw new IllegalArgumentException("Batch of " + userIds.length + " users, "
+                    + movieIds.length + " movies and " + ratings.length + " ratings");
+        }
+        long start = System.nanoTime();
+        BitSet changed = new BitSet();
+        int added = 0;
 
-                    usersData.insert(user, movid, rate);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < userIds.length; i++) {
+                if (usersData.upsert(userIds[i], movieIds[i], ratings[i])) {
+                    added++;
                 }
+                changed.set(usersData.get(userIds[i]).position);
+            }
+            staleNeighbors.or(changed);
+            if (lshIndex != null) {
+                lshIndex.update(changed);
             }
+            USERS.set(usersData.size());
+            RATINGS.set(RATINGS.get() + added);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        RATINGS_INGESTED.add(userIds.length);
+        INGEST_TIME.record(System.nanoTime() - start);
+        return added;
+    }
+
+    /**
+     * Follows an append-only ratings file: ratings appended to it after this call are
+     * read on a background thread and added with addRatings, at most intervalMillis
+     * after they were written. Malformed lines are skipped and reported (and counted by
+     * the malformedRatingsSkipped metric). Stops following the file followed before, if any.
+     * @param ratingsFilename name of the file with ratings info
+     * @param intervalMillis time between two reads of the file, in milliseconds
+     */
+    public void followRatings(String ratingsFilename, long intervalMillis) {
+
+        stopFollowingRatings();
+        try {
+            follower = new RatingsFollower(ratingsFilename, this::addRatings);
+            follower.start(intervalMillis);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -115,42 +653,339 @@ public class MovieRecommender {
         }
     }
 
+    /**
+     * Stops following the ratings file given to followRatings, after the read in
+     * progress (if any) is added
+     */
+    public void stopFollowingRatings() {
+        if (follower != null) {
+            follower.stop();
+            follower = null;
+        }
+    }
+
     /**
      * Computes up to 'num' movie recommendations for the user with the given user
      * id and prints these movie titles to the given file. First calls
      * findMostSimilarUser and then getFavoriteMovies(num) method on the
      * "most similar user" to get up to 'num' recommendations.
      * Prints movies that the user with the given userId has not seen yet.
+     * A repeated query is answered from the result cache while no ratings change.
      * @param userid id of the user
      * @param num max number of recommendations
      * @param filename name of the file to output recommended movie titles
      */
     public void findRecommendations(int userid, int num, String filename) {
+        printResults(userid, num, ResultCache.RECOMMENDATIONS, filename);
+    }
+
+    /**
+     * Private helper method that prints the titles of the recommendations or
+     * anti-recommendations of a user to a file, one per line. Movies without a title
+     * are left out. Each phase is reported as a Flight Recorder event (see QueryEvents).
+     * @param userid id of the user
+     * @param num max number of movies
+     * @param kind ResultCache.RECOMMENDATIONS or ResultCache.ANTI_RECOMMENDATIONS
+     * @param filename name of the output file
+     */
+    private void printResults(int userid, int num, int kind, String filename) {
+
+        QueryEvents.Query query = new QueryEvents.Query();
+        query.begin();
 
         Path outPath = Paths.get(filename);
         outPath.getParent().toFile().mkdirs();
 
-        UserNode mostSimilar = usersData.findMostSimilarUser(userid);
-        UserNode user = usersData.get(userid);
-        int[] favourite = mostSimilar.getFavoriteMovies(num);
-        boolean seenMovie = false;
+        int[] movieIds;
+        lock.readLock().lock();
+        try {
+            movieIds = recommendations(userid, num, kind);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        String[] titles = titles(movieIds);
+        int count = titles.length;
 
+        QueryEvents.ResultWrite write = new QueryEvents.ResultWrite();
+        write.begin();
         try(BufferedWriter out = Files.newBufferedWriter(outPath)) {
 
-            for (int i = 0; i < favourite.length; i++) {
-                int movieId = favourite[i];
-                for (MovieRatingNode x: user.getMovieRatings()) {
-                    if (x.getMovieId() == movieId) {
-                        seenMovie = true;
-                        break;
-                    }
+            for (int i = 0; i < count; i++) {
+                out.write(titles[i] + "\n");
+            }
+
+        } catch (IOException e) {
+            e.getMessage();
+            e.printStackTrace();
+        }
+        if (write.shouldCommit()) {
+            write.file = filename;
+            write.lines = count;
+            write.bytes = outPath.toFile().length();
+            write.commit();
+        }
+
+        query.userId = userid;
+        query.kind = kind == ResultCache.RECOMMENDATIONS ? "recommend" : "avoid";
+        query.requested = num;
+        query.results = count;
+        query.commit();
+    }
+
+    /**
+     * Private helper method that finds the titles of movies for findRecommendations,
+     * findAntiRecommendations and the batch mode, leaving out movies without a title
+     * @param movieIds ids of the movies
+     * @return titles of the movies that have one, in the same order
+     */
+    private String[] titles(int[] movieIds) {
+
+        QueryEvents.TitleLookup lookup = new QueryEvents.TitleLookup();
+        lookup.begin();
+        String[] titles = new String[movieIds.length];
+        int count = 0;
+        for (int movieId: movieIds) {
+            String movie = movieMap.get(movieId);
+            if (movie != null) {
+                titles[count++] = movie;
+            }
+        }
+        lookup.titles = count;
+        lookup.missing = movieIds.length - count;
+        lookup.commit();
+        return count == titles.length ? titles : Arrays.copyOf(titles, count);
+    }
+
+    /**
+     * Private helper method that computes the movie ids printed by findRecommendations
+     * or findAntiRecommendations, or takes them from the result cache
+     * @param userid id of the user
+     * @param num max number of movies
+     * @param kind ResultCache.RECOMMENDATIONS or ResultCache.ANTI_RECOMMENDATIONS
+     * @return ids of the movies, which must not be modified
+     */
+    private int[] recommendations(int userid, int num, int kind) {
+
+        long start = System.nanoTime();
+        long version = usersData.version();
+        int[] result = results.get(userid, num, kind, version);
+        if (result == null) {
+            UserNode user = lookupUser(userid);
+            UserNode mostSimilar = findMostSimilarUser(userid);
+            result = recommendations(user, mostSimilar, num, kind);
+            results.put(userid, num, kind, version, result);
+        }
+        QUERY_TIME.record(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Private helper method that finds the node of a user
+     * @param userid id of the user
+     * @return the node of the user, or null if the user is not loaded
+     */
+    private UserNode lookupUser(int userid) {
+        QueryEvents.UserLookup event = new QueryEvents.UserLookup();
+        event.begin();
+        UserNode user = usersData.get(userid);
+        event.userId = userid;
+        event.found = user != null;
+        event.commit();
+        return user;
+    }
+
+    /**
+     * Private helper method that computes the movie ids printed by findRecommendations
+     * or findAntiRecommendations from the most similar user
+     * @param user the user
+     * @param mostSimilar the user most similar to user
+     * @param num max number of movies
+     * @param kind ResultCache.RECOMMENDATIONS or ResultCache.ANTI_RECOMMENDATIONS
+     * @return ids of the movies
+     */
+    private int[] recommendations(UserNode user, UserNode mostSimilar, int num, int kind) {
+
+        QueryEvents.MovieSelection selection = new QueryEvents.MovieSelection();
+        selection.begin();
+        int[] candidates = kind == ResultCache.RECOMMENDATIONS
+                ? mostSimilar.getFavoriteMovies(num) : mostSimilar.getLeastFavoriteMovies(num);
+        selection.end();
+
+        QueryEvents.SeenFilter filter = new QueryEvents.SeenFilter();
+        filter.begin();
+        MovieIndex movies = usersData.movieIndex();
+        int[] result = new int[candidates.length];
+        int selected = 0;
+        int count = 0;
+
+        for (int movieId: candidates) {
+            // the arrays of favorite movies are padded with 0s
+            if (movieId != 0) {
+                selected++;
+                if (!user.hasSeen(movies, movieId)) {
+                    result[count++] = movieId;
+                }
+            }
+        }
+        filter.candidates = selected;
+        filter.seen = selected - count;
+        filter.commit();
+
+        selection.mostSimilarUserId = mostSimilar.getId();
+        selection.requested = num;
+        selection.selected = selected;
+        selection.commit();
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Computes up to 'num' recommendations and anti-recommendations for every user in
+     * the given array and writes them all to one file. Each line holds the user id, the
+     * kind of result ("recommend" or "avoid") and a movie title, separated by tabs, in
+     * the order of the array and in the same order as findRecommendations and
+     * findAntiRecommendations print them.
+     * The users are split into chunks that the threads of a pool work on. The most
+     * similar user is found once per user and serves both kinds of results, and the
+     * results go through the result cache. Each chunk is formatted in memory and written
+     * to a single FileChannel in order. Users that are not loaded, or that have no
+     * similar user, are left out.
+     * @param userIds ids of the users
+     * @param num max number of recommendations and of anti-recommendations per user
+     * @param filename name of the output file
+     * @param threads number of threads to use
+     */
+    public void findBatchRecommendations(int[] userIds, int num, String filename, int threads) {
+
+        Path outPath = Paths.get(filename);
+        if (outPath.getParent() != null) {
+            outPath.getParent().toFile().mkdirs();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        lock.readLock().lock();
+        long version = usersData.version();
+
+        try (FileChannel channel = FileChannel.open(outPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            List<ForkJoinTask<byte[]>> chunks = new ArrayList<>();
+            for (int from = 0; from < userIds.length; from += BATCH_USERS_PER_TASK) {
+                int start = from;
+                int end = Math.min(from + BATCH_USERS_PER_TASK, userIds.length);
+                chunks.add(pool.submit(() -> batchChunk(userIds, start, end, num, version)));
+            }
+
+            for (ForkJoinTask<byte[]> chunk: chunks) {
+                ByteBuffer buf = ByteBuffer.wrap(chunk.get());
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.out.println("File Output Unsuccessful");
+        } finally {
+            lock.readLock().unlock();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the ids of all loaded users, in the order they were loaded
+     * @return array of user ids
+     */
+    public int[] getUserIds() {
+        lock.readLock().lock();
+        try {
+            return usersData.userIds();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Private helper method that computes and formats the results of a chunk of the
+     * users of findBatchRecommendations
+     * @param userIds ids of all users of the batch
+     * @param from first position of the chunk, inclusive
+     * @param to last position of the chunk, exclusive
+     * @param num max number of movies of each kind
+     * @param version model version at the start of the batch
+     * @return lines of the chunk, UTF-8 encoded
+     */
+    private byte[] batchChunk(int[] userIds, int from, int to, int num, long version) {
+
+        StringBuilder out = new StringBuilder();
+
+        for (int i = from; i < to; i++) {
+            int userid = userIds[i];
+            UserNode user = usersData.get(userid);
+            if (user == null) {
+                continue;
+            }
+            int[] recommended = results.get(userid, num, ResultCache.RECOMMENDATIONS, version);
+            int[] anti = results.get(userid, num, ResultCache.ANTI_RECOMMENDATIONS, version);
+
+            if (recommended == null || anti == null) {
+                // the threads of the batch are busy with other users, search on this one
+                UserNode mostSimilar = findMostSimilarUser(userid, null);
+                if (mostSimilar == null) {
+                    continue;
+                }
+                if (recommended == null) {
+                    recommended = recommendations(user, mostSimilar, num, ResultCache.RECOMMENDATIONS);
+                    results.put(userid, num, ResultCache.RECOMMENDATIONS, version, recommended);
                 }
-                if (seenMovie == false) {
-                    String movie = movieMap.get(movieId);
-                    out.write(movie + "\n");
+                if (anti == null) {
+                    anti = recommendations(user, mostSimilar, num, ResultCache.ANTI_RECOMMENDATIONS);
+                    results.put(userid, num, ResultCache.ANTI_RECOMMENDATIONS, version, anti);
                 }
             }
 
+            for (String movie: titles(recommended)) {
+                out.append(userid).append("\trecommend\t").append(movie).append('\n');
+            }
+            for (String movie: titles(anti)) {
+                out.append(userid).append("\tavoid\t").append(movie).append('\n');
+            }
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes up to 'num' movie recommendations for the user with the given user id
+     * using the k most similar users instead of only the most similar one, and prints
+     * the titles to the given file, best first.
+     * The k nearest neighbors are found in one scan over the users. Every movie that a
+     * neighbor rated and the user has not seen gets a predicted rating: the user's mean
+     * rating plus the similarity-weighted average of the neighbors' mean-centered ratings.
+     * The movies with the highest predicted ratings are recommended.
+     * @param userid id of the user
+     * @param k number of similar users to use
+     * @param num max number of recommendations
+     * @param filename name of the file to output recommended movie titles
+     */
+    public void findNeighborhoodRecommendations(int userid, int k, int num, String filename) {
+
+        Path outPath = Paths.get(filename);
+        outPath.getParent().toFile().mkdirs();
+
+        int[] recommended;
+        lock.readLock().lock();
+        try {
+            recommended = neighborhoodRecommendations(userid, k, num);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try(BufferedWriter out = Files.newBufferedWriter(outPath)) {
+
+            for (String movie: titles(recommended)) {
+                out.write(movie + "\n");
+            }
+
         } catch (IOException e) {
             e.getMessage();
             e.printStackTrace();
@@ -158,42 +993,112 @@ public class MovieRecommender {
     }
 
     /**
-     * Computes up to 'num' movie anti-recommendations for the user with the given
-     * user id and prints these movie titles to the given file. These are the
-     * movies the user should avoid. First calls findMostSimilarUser and then
-     * getLeastFavoriteMovies(num) method on the "most similar user" to get up
-     * to num movies the most similar user strongly disliked. Prints only
-     * those movies to the file that the user with the given userid has not seen yet.
+     * Private helper method that computes the movie ids recommended by
+     * findNeighborhoodRecommendations, from best to worst
      * @param userid id of the user
-     * @param num max number of anti-recommendations
-     * @param filename name of the file where to output anti-recommendations (movie titles)
+     * @param k number of similar users to use
+     * @param num max number of recommendations
+     * @return ids of the recommended movies
      */
-    public void findAntiRecommendations(int userid, int num, String filename) {
+    private int[] neighborhoodRecommendations(int userid, int k, int num) {
+
+        UserNode user = usersData.get(userid);
+        double[] similarities = new double[k];
+        UserNode[] neighbors = findMostSimilarUsers(userid, k, similarities);
+
+        MovieScores scores = new MovieScores(4 * user.getRatingCount());
+        user.getMovieRatings().forEachRating((movieId, rating) -> scores.exclude(movieId));
+
+        for (int i = 0; i < neighbors.length; i++) {
+            double similarity = similarities[i];
+            double mean = neighbors[i].getMeanRating();
+            neighbors[i].getMovieRatings().forEachRating((movieId, rating) ->
+                    scores.add(movieId, similarity * (rating - mean), similarity));
+        }
+
+        TopKHeap best = new TopKHeap(num);
+        scores.offerTo(user.getMeanRating(), best);
+        return best.drain(null);
+    }
+
+    /**
+     * Private helper method that finds the k most similar users, from the neighbor table
+     * if it holds at least k neighbors per user
+     * @param userid id of the user
+     * @param k number of similar users
+     * @param similarities array of length k that receives the similarity of each user
+     * @return up to k most similar users, from most to least similar
+     */
+    private UserNode[] findMostSimilarUsers(int userid, int k, double[] similarities) {
+
+        int row = neighborRow(userid);
+        if (row < 0 || k > neighborTable.k()) {
+            return usersData.findMostSimilarUsers(userid, k, similarities, minOverlap);
+        }
+        UserNode[] result = new UserNode[Math.min(k, neighborTable.count(row))];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = usersData.get(neighborTable.neighbor(row, i));
+            similarities[i] = neighborTable.score(row, i);
+        }
+        return result;
+    }
+
+    /**
+     * Precomputes the model of the item-based recommender used by findItemRecommendations:
+     * the m most similar movies of every movie, computed from the loaded ratings with the
+     * similarity pool (or the common pool if none is set). Queries are not blocked while
+     * it is computed, and the previous model is used until the new one is set. The model
+     * is not updated when ratings change, also not by addRatings; compute it again.
+     * @param m number of neighbors to keep per movie
+     */
+    public void computeItemNeighbors(int m) {
+        ForkJoinPool pool = similarityPool != null ? similarityPool : ForkJoinPool.commonPool();
+        ItemNeighbors model;
+        compactAndReadLock();
+        try {
+            model = ItemNeighbors.compute(usersData, m, pool);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            itemNeighbors = model;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Computes up to 'num' movie recommendations for the user with the given user id
+     * with the item-based recommender and prints the titles to the given file, best first.
+     * Every movie that is a neighbor of a movie the user rated, and that the user has not
+     * seen, gets a predicted rating: the user's mean rating plus the similarity-weighted
+     * average of the user's mean-centered ratings of the movies it is a neighbor of.
+     * Only the neighbors of the user's own movies are read, so the cost of a query does
+     * not grow with the number of users. Prints nothing if the model was not computed
+     * with computeItemNeighbors.
+     * @param userid id of the user
+     * @param num max number of recommendations
+     * @param filename name of the file to output recommended movie titles
+     */
+    public void findItemRecommendations(int userid, int num, String filename) {
 
         Path outPath = Paths.get(filename);
         outPath.getParent().toFile().mkdirs();
 
-        UserNode mostSimilar = usersData.findMostSimilarUser(userid);
-        UserNode user = usersData.get(userid);
-        int[] anti = mostSimilar.getLeastFavoriteMovies(num);
-        boolean seenMovie = false;
+        int[] recommended;
+        lock.readLock().lock();
+        try {
+            recommended = itemNeighbors == null ? new int[0] : itemNeighbors.recommend(usersData.get(userid), num);
+        } finally {
+            lock.readLock().unlock();
+        }
 
         try(BufferedWriter out = Files.newBufferedWriter(outPath)) {
 
-            for (int i = 0; i < anti.length; i++) {
-                int movieId = anti[i];
-                for (MovieRatingNode x: user.getMovieRatings()) {
-                    if (x.getMovieId() == movieId) {
-                        seenMovie = true;
-                        break;
-                    }
-                }
-                if (seenMovie == false) {
-                    String movie = movieMap.get(movieId);
-                    if (movie != null) {
-                        out.write(movie + "\n");
-                    }
-                }
+            for (String movie: titles(recommended)) {
+                out.write(movie + "\n");
             }
 
         } catch (IOException e) {
@@ -201,4 +1106,83 @@ public class MovieRecommender {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Trains the latent factor model used by findFactorRecommendations on the loaded
+     * ratings, with stochastic gradient descent on the threads of the similarity pool
+     * (or the common pool if none is set). Queries are not blocked while it trains, and
+     * the previous model is used until the new one is set. The model is not updated when
+     * ratings change, also not by addRatings; train it again.
+     * @param factors number of latent factors per user and movie
+     * @param iterations number of passes over all ratings
+     */
+    public void trainFactorModel(int factors, int iterations) {
+        ForkJoinPool pool = similarityPool != null ? similarityPool : ForkJoinPool.commonPool();
+        FactorModel model;
+        compactAndReadLock();
+        try {
+            model = FactorModel.train(usersData, factors, iterations, pool, FACTOR_SEED);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            factorModel = model;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Computes up to 'num' movie recommendations for the user with the given user id
+     * with the latent factor model trained by trainFactorModel, and prints the titles to
+     * the given file, best first. Every movie the user has not seen is scored with one
+     * dot product of the user's and the movie's factors, so a query does not depend on
+     * the number of users. Prints nothing if no model was trained, or if the user was
+     * added after the model was trained.
+     * @param userid id of the user
+     * @param num max number of recommendations
+     * @param filename name of the file to output recommended movie titles
+     */
+    public void findFactorRecommendations(int userid, int num, String filename) {
+
+        Path outPath = Paths.get(filename);
+        outPath.getParent().toFile().mkdirs();
+
+        int[] recommended;
+        lock.readLock().lock();
+        try {
+            recommended = factorModel == null ? new int[0] : factorModel.recommend(usersData.get(userid), num);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try(BufferedWriter out = Files.newBufferedWriter(outPath)) {
+
+            for (String movie: titles(recommended)) {
+                out.write(movie + "\n");
+            }
+
+        } catch (IOException e) {
+            e.getMessage();
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Computes up to 'num' movie anti-recommendations for the user with the given
+     * user id and prints these movie titles to the given file. These are the
+     * movies the user should avoid. First calls findMostSimilarUser and then
+     * getLeastFavoriteMovies(num) method on the "most similar user" to get up
+     * to num movies the most similar user strongly disliked. Prints only
+     * those movies to the file that the user with the given userid has not seen yet.
+     * A repeated query is answered from the result cache while no ratings change.
+     * @param userid id of the user
+     * @param num max number of anti-recommendations
+     * @param filename name of the file where to output anti-recommendations (movie titles)
+     */
+    public void findAntiRecommendations(int userid, int num, String filename) {
+        printResults(userid, num, ResultCache.ANTI_RECOMMENDATIONS, filename);
+    }
 }
@@ -0,0 +1,137 @@
+package movieRecommender;
+
+import java.util.Arrays;
+
+/**
+ * MovieScores. Accumulates a weighted score for every movie, keyed by movie id, in an
+ * open-addressing hash table of primitive arrays. For each movie it keeps the sum of the
+ * weighted values and the sum of the weights added, so the final score of a movie is
+ * their ratio. Movies can be excluded beforehand (for example, the movies a user has
+ * already seen); values added for them are ignored.
+ */
+class MovieScores {
+    private static final int EMPTY = Integer.MIN_VALUE; // marks a free slot
+
+    private int[] movieIds;
+    private double[] sums;
+    private double[] weights;
+    private boolean[] excluded;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an empty accumulator
+     * @param expectedMovies number of movies expected, used to size the table
+     */
+    MovieScores(int expectedMovies) {
+        int capacity = 16;
+        while (capacity < expectedMovies * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Excludes a movie, so that values added for it are ignored
+     * @param movieId id of the movie
+     */
+    void exclude(int movieId) {
+        excluded[slotFor(movieId)] = true;
+    }
+
+    /**
+     * Adds a weighted value for the given movie, unless the movie is excluded
+     * @param movieId id of the movie
+     * @param value value multiplied by its weight
+     * @param weight weight of the value
+     */
+    void add(int movieId, double value, double weight) {
+        int slot = slotFor(movieId);
+        if (!excluded[slot]) {
+            sums[slot] += value;
+            weights[slot] += weight;
+        }
+    }
+
+    /**
+     * Offers the score (sum of values / sum of weights, plus the given base) of every
+     * movie that is not excluded and has a positive total weight to the given heap
+     * @param base value added to every score
+     * @param heap receives (movieId, score) pairs
+     */
+    void offerTo(double base, TopKHeap heap) {
+        for (int i = 0; i < movieIds.length; i++) {
+            if (movieIds[i] != EMPTY && !excluded[i] && weights[i] > 0) {
+                heap.offer(movieIds[i], base + sums[i] / weights[i]);
+            }
+        }
+    }
+
+    /**
+     * Private helper method that returns the slot of the given movie, adding the movie if needed
+     * @param movieId id of the movie
+     * @return slot of the movie
+     */
+    private int slotFor(int movieId) {
+        if ((size + 1) * 2 > movieIds.length) {
+            grow();
+        }
+        int slot = slot(movieId);
+        while (movieIds[slot] != EMPTY) {
+            if (movieIds[slot] == movieId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        movieIds[slot] = movieId;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Private helper method that returns the home slot for a given movie id
+     * @param movieId id of the movie
+     * @return index of the first slot to probe
+     */
+    private int slot(int movieId) {
+        int h = movieId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Private helper method that doubles the capacity of the table and re-inserts all entries
+     */
+    private void grow() {
+        int[] oldIds = movieIds;
+        double[] oldSums = sums;
+        double[] oldWeights = weights;
+        boolean[] oldExcluded = excluded;
+        allocate(oldIds.length * 2);
+
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                int slot = slot(oldIds[i]);
+                while (movieIds[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                movieIds[slot] = oldIds[i];
+                sums[slot] = oldSums[i];
+                weights[slot] = oldWeights[i];
+                excluded[slot] = oldExcluded[i];
+            }
+        }
+    }
+
+    /**
+     * Private helper method that allocates empty arrays of the given capacity
+     * @param capacity number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        movieIds = new int[capacity];
+        sums = new double[capacity];
+        weights = new double[capacity];
+        excluded = new boolean[capacity];
+        mask = capacity - 1;
+        Arrays.fill(movieIds, EMPTY);
+    }
+}
@@ -0,0 +1,231 @@
+package movieRecommender;
+
+import java.util.Arrays;
+
+/**
+ * MovieUsersIndex. An inverted index from a movie id to the users who rated the movie.
+ * Users are identified by their position in the UsersList, and the list of positions
+ * of each movie (its posting list) is sorted from lowest to highest as long as users
+ * are added in list order. Used to find the users who share at least a given number of
+ * movies with a user, without comparing the user with everybody else.
+ */
+class MovieUsersIndex {
+    private static final int EMPTY = Integer.MIN_VALUE; // marks a free slot
+
+    private int[] movieIds;
+    private int[][] postings;
+    private int[] lengths;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an empty index
+     */
+    MovieUsersIndex() {
+        allocate(1024);
+    }
+
+    /**
+     * Builds the index for the first numUsers users of the given array
+     * @param users users in list order
+     * @param numUsers number of users
+     * @return new index
+     */
+    static MovieUsersIndex build(UserNode[] users, int numUsers) {
+        MovieUsersIndex index = new MovieUsersIndex();
+        for (int i = 0; i < numUsers; i++) {
+            int position = i;
+            users[i].getMovieRatings().forEachRating((movieId, rating) -> index.add(movieId, position));
+        }
+        return index;
+    }
+
+    /**
+     * Adds the user at the given position to the posting list of the given movie.
+     * Nothing is added if the user is already the last one in the list of the movie.
+     * @param movieId id of the movie
+     * @param position position of the user in the UsersList
+     */
+    void add(int movieId, int position) {
+        int slot = slotFor(movieId);
+        int length = lengths[slot];
+        int[] list = postings[slot];
+
+        if (length > 0 && list[length - 1] == position) {
+            return;
+        }
+        if (length == list.length) {
+            list = Arrays.copyOf(list, Math.max(4, length * 2));
+            postings[slot] = list;
+        }
+        list[length] = position;
+        lengths[slot] = length + 1;
+    }
+
+    /**
+     * Returns the positions of the users who rated at least minOverlap of the movies
+     * in the given list, sorted from lowest to highest. The user at position self is left out.
+     * @param ratings ratings of the user
+     * @param self position of the user, or -1
+     * @param numUsers number of users in the UsersList
+     * @param minOverlap minimum number of movies in common
+     * @return positions of the candidate users
+     */
+    int[] candidates(MovieRatingsList ratings, int self, int numUsers, int minOverlap) {
+
+        OverlapCounter counter = new OverlapCounter(numUsers);
+        ratings.forEachRating(counter);
+
+        int[] result = new int[counter.touched];
+        int n = 0;
+        for (int i = 0; i < counter.touched; i++) {
+            int position = counter.positions[i];
+            if (position != self && counter.counts[position] >= minOverlap) {
+                result[n++] = position;
+            }
+        }
+        Arrays.sort(result, 0, n);
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Counts, for every user, the movies they share with the visited ratings.
+     * Remembers which users were seen, so they do not have to be found by scanning all counts.
+     */
+    private class OverlapCounter implements MovieRatingsList.RatingVisitor {
+        final int[] counts;
+        int[] positions = new int[64];
+        int touched;
+
+        /**
+         * Creates a counter for the given number of users
+         * @param numUsers number of users
+         */
+        OverlapCounter(int numUsers) {
+            counts = new int[numUsers];
+        }
+
+        /**
+         * Adds one to the count of every user who rated the movie
+         * @param movieId id of the movie
+         * @param rating rating of the movie, not used
+         */
+        @Override
+        public void visit(int movieId, double rating) {
+            int slot = find(movieId);
+            if (slot < 0) {
+                return;
+            }
+            int[] list = postings[slot];
+            for (int i = 0, length = lengths[slot]; i < length; i++) {
+                int position = list[i];
+                if (position >= counts.length) {
+                    continue; // user added after the scan started
+                }
+                if (counts[position]++ == 0) {
+                    if (touched == positions.length) {
+                        positions = Arrays.copyOf(positions, touched * 2);
+                    }
+                    positions[touched++] = position;
+                }
+            }
+        }
+    }
+
+    /**
+     * Private helper method that returns the slot of the given movie, or -1 if it is not in the index
+     * @param movieId id of the movie
+     * @return slot of the movie or -1
+     */
+    private int find(int movieId) {
+        int slot = slot(movieId);
+        while (movieIds[slot] != EMPTY) {
+            if (movieIds[slot] == movieId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Private helper method that returns the slot of the given movie, adding the movie if needed
+     * @param movieId id of the movie
+     * @return slot of the movie
+     */
+    private int slotFor(int movieId) {
+        int slot = find(movieId);
+        if (slot >= 0) {
+            return slot;
+        }
+        if ((size + 1) * 2 > movieIds.length) {
+            grow();
+        }
+        slot = slot(movieId);
+        while (movieIds[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        movieIds[slot] = movieId;
+        postings[slot] = new int[4];
+        size++;
+        return slot;
+    }
+
+    /**
+     * Private helper method that returns the home slot for a given movie id
+     * @param movieId id of the movie
+     * @return index of the first slot to probe
+     */
+    private int slot(int movieId) {
+        int h = movieId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the approximate number of bytes of heap used by the index
+     * @return size in bytes
+     */
+    long sizeInBytes() {
+        long bytes = 16L * movieIds.length; // ids, lengths and references to the posting lists
+        for (int[] list: postings) {
+            if (list != null) {
+                bytes += 16 + 4L * list.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Private helper method that doubles the capacity of the table and re-inserts all entries
+     */
+    private void grow() {
+        int[] oldIds = movieIds;
+        int[][] oldPostings = postings;
+        int[] oldLengths = lengths;
+        allocate(oldIds.length * 2);
+
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                int slot = slot(oldIds[i]);
+                while (movieIds[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                movieIds[slot] = oldIds[i];
+                postings[slot] = oldPostings[i];
+                lengths[slot] = oldLengths[i];
+            }
+        }
+    }
+
+    /**
+     * Private helper method that allocates empty arrays of the given capacity
+     * @param capacity number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        movieIds = new int[capacity];
+        postings = new int[capacity][];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(movieIds, EMPTY);
+    }
+}
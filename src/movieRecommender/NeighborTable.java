@@ -0,0 +1,204 @@
+package movieRecommender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * NeighborTable. The k most similar users (neighbors) of every user, as computed by
+ * AllPairsSimilarity. Row r holds the neighbors of the user at position r of the
+ * UsersList, from most to least similar, so finding the neighbors of a user takes
+ * constant time. The table can be saved to and loaded from a compact binary file.
+ *
+ * File layout (little endian):
+ *  header:    magic, format version, number of users, k
+ *  users:     user id of every row
+ *  counts:    number of neighbors of every row (at most k)
+ *  neighbors: k user ids per row, then k similarity scores (floats) per row
+ */
+class NeighborTable {
+    static final int MAGIC = 0x4D524E31; // "MRN1"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * 4;
+
+    private int k;
+    private int[] userIds;
+    private int[] counts;
+    private int[] neighbors;
+    private float[] scores;
+
+    /**
+     * Creates an empty table
+     * @param numUsers number of rows
+     * @param k maximum number of neighbors per row
+     */
+    NeighborTable(int numUsers, int k) {
+        this.k = k;
+        this.userIds = new int[numUsers];
+        this.counts = new int[numUsers];
+        this.neighbors = new int[numUsers * k];
+        this.scores = new float[numUsers * k];
+    }
+
+    /**
+     * Returns the maximum number of neighbors per row
+     * @return k
+     */
+    int k() {
+        return k;
+    }
+
+    /**
+     * Returns the number of rows (users) in the table
+     * @return number of rows
+     */
+    int rows() {
+        return userIds.length;
+    }
+
+    /**
+     * Returns the user id of a row
+     * @param row row of the table
+     * @return user id
+     */
+    int userId(int row) {
+        return userIds[row];
+    }
+
+    /**
+     * Returns the number of neighbors stored for a row
+     * @param row row of the table
+     * @return number of neighbors
+     */
+    int count(int row) {
+        return counts[row];
+    }
+
+    /**
+     * Returns the user id of the i-th most similar neighbor of a row
+     * @param row row of the table
+     * @param i rank of the neighbor, 0 is the most similar
+     * @return user id of the neighbor
+     */
+    int neighbor(int row, int i) {
+        return neighbors[row * k + i];
+    }
+
+    /**
+     * Returns the similarity of the i-th most similar neighbor of a row
+     * @param row row of the table
+     * @param i rank of the neighbor, 0 is the most similar
+     * @return similarity score
+     */
+    double score(int row, int i) {
+        return scores[row * k + i];
+    }
+
+    /**
+     * Sets the neighbors of a row
+     * @param row row of the table
+     * @param userId user id of the row
+     * @param ids user ids of the neighbors, from most to least similar (at most k)
+     * @param similarities similarity of each neighbor
+     */
+    void set(int row, int userId, int[] ids, double[] similarities) {
+        userIds[row] = userId;
+        counts[row] = ids.length;
+        for (int i = 0; i < ids.length; i++) {
+            neighbors[row * k + i] = ids[i];
+            scores[row * k + i] = (float) similarities[i];
+        }
+    }
+
+    /**
+     * Writes the table to a file
+     * @param filename name of the file
+     * @throws IOException if the file can not be written
+     */
+    void save(String filename) throws IOException {
+
+        Path path = Paths.get(filename);
+        if (path.getParent() != null) {
+            path.getParent().toFile().mkdirs();
+        }
+        int rows = rows();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + 8 * rows + 8 * neighbors.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(k);
+        buf.asIntBuffer().put(userIds);
+        buf.position(buf.position() + 4 * rows);
+        buf.asIntBuffer().put(counts);
+        buf.position(buf.position() + 4 * rows);
+        buf.asIntBuffer().put(neighbors);
+        buf.position(buf.position() + 4 * neighbors.length);
+        buf.asFloatBuffer().put(scores);
+        buf.position(buf.position() + 4 * scores.length);
+        buf.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by save, through a memory mapping of the file
+     * @param filename name of the file
+     * @return the table
+     * @throws IOException if the file can not be read, is not a neighbor table of this version,
+     *         or is truncated or corrupt
+     */
+    static NeighborTable load(String filename) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(filename + " is not a neighbor table");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buf.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a neighbor table");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported neighbor table version " + version + " in " + filename);
+            }
+            int rows = buf.getInt();
+            int k = buf.getInt();
+            if (rows < 0 || k < 0) {
+                throw new IOException("Corrupt neighbor table header in " + filename);
+            }
+            // user ids and counts, then k neighbors and k scores per row
+            long bytes = 8L * rows + 8L * rows * k;
+            if (bytes > buf.remaining()) {
+                throw new IOException("Truncated neighbor table " + filename + ": " + bytes + " bytes needed, "
+                        + buf.remaining() + " left");
+            }
+
+            NeighborTable table = new NeighborTable(rows, k);
+            buf.asIntBuffer().get(table.userIds);
+            buf.position(buf.position() + 4 * rows);
+            buf.asIntBuffer().get(table.counts);
+            buf.position(buf.position() + 4 * rows);
+            for (int row = 0; row < rows; row++) {
+                if (table.counts[row] < 0 || table.counts[row] > k) {
+                    throw new IOException("Corrupt neighbor count of row " + row + " in " + filename);
+                }
+            }
+            buf.asIntBuffer().get(table.neighbors);
+            buf.position(buf.position() + 4 * table.neighbors.length);
+            buf.asFloatBuffer().get(table.scores);
+            return table;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package movieRecommender;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * QueryEvents. Java Flight Recorder events for the phases of findRecommendations and
+ * findAntiRecommendations, so a recording shows where the time of a slow query went:
+ *
+ *  Query               the whole call, with the user, the kind and the number of results
+ *  UserLookup          finding the node of the user
+ *  SimilarUserSearch   finding the most similar user (neighbor table, LSH index or scan),
+ *                      with the number of movies both users rated
+ *  SimilarityScan      comparing the user with the candidates, one per scan of UsersList
+ *                      or LshIndex, with the number of candidates
+ *  MovieSelection      taking the favorite (or least favorite) movies of the similar user
+ *  SeenFilter          leaving out the movies the user has already seen
+ *  TitleLookup         finding the titles of the movies
+ *  ResultWrite         writing the titles to the output file, with the bytes written
+ *
+ * While no recording is running, creating an event and calling commit does nothing: the
+ * JIT compiler removes the allocation, and fields that are costly to compute are only
+ * filled in after shouldCommit returns true. Stack traces are off, as the phase already
+ * tells where the event comes from. The events need the jdk.jfr module, which javac
+ * only offers from release 11, so the module is compiled for Java 11.
+ */
+final class QueryEvents {
+    private static final String CATEGORY = "Movie Recommender";
+
+    /**
+     * Private constructor, the class only holds the event types
+     */
+    private QueryEvents() {
+    }
+
+    @Name("movieRecommender.Query")
+    @Label("Recommendation Query")
+    @Description("A call to findRecommendations or findAntiRecommendations")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Query extends Event {
+        @Label("User Id")
+        int userId;
+
+        @Label("Kind")
+        @Description("recommend or avoid")
+        String kind;
+
+        @Label("Requested")
+        int requested;
+
+        @Label("Results")
+        int results;
+    }
+
+    @Name("movieRecommender.UserLookup")
+    @Label("User Lookup")
+    @Category({CATEGORY, "Query Phases"})
+    @StackTrace(false)
+    static final class UserLookup extends Event {
+        @Label("User Id")
+        int userId;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("movieRecommender.SimilarUserSearch")
+    @Label("Similar User Search")
+    @Description("Search for the user most similar to the user of the query")
+    @Category({CATEGORY, "Query Phases"})
+    @StackTrace(false)
+    static final class SimilarUserSearch extends Event {
+        @Label("User Id")
+        int userId;
+
+        @Label("Method")
+        @Description("neighborTable, lsh, parallelScan or scan")
+        String method;
+
+        @Label("Most Similar User Id")
+        @Description("0 if no user has a positive similarity")
+        int mostSimilarUserId;
+
+        @Label("Ratings")
+        @Description("Number of movies the user rated")
+        int ratings;
+
+        @Label("Overlap")
+        @Description("Number of movies rated by both the user and the most similar user")
+        int overlap;
+    }
+
+    @Name("movieRecommender.SimilarityScan")
+    @Label("Similarity Scan")
+    @Description("Comparison of a user with the candidates of a scan")
+    @Category({CATEGORY, "Query Phases"})
+    @StackTrace(false)
+    static final class SimilarityScan extends Event {
+        @Label("User Id")
+        int userId;
+
+        @Label("Candidates")
+        @Description("Number of users the user was compared with")
+        int candidates;
+    }
+
+    @Name("movieRecommender.MovieSelection")
+    @Label("Movie Selection")
+    @Description("Favorite or least favorite movies of the most similar user")
+    @Category({CATEGORY, "Query Phases"})
+    @StackTrace(false)
+    static final class MovieSelection extends Event {
+        @Label("Most Similar User Id")
+        int mostSimilarUserId;
+
+        @Label("Requested")
+        int requested;
+
+        @Label("Selected")
+        int selected;
+    }
+
+    @Name("movieRecommender.SeenFilter")
+    @Label("Seen Filter")
+    @Description("Removal of the movies the user has already seen")
+    @Category({CATEGORY, "Query Phases"})
+    @StackTrace(false)
+    static final class SeenFilter extends Event {
+        @Label("Candidates")
+        int candidates;
+
+        @Label("Seen")
+        @Description("Movies left out because the user has seen them")
+        int seen;
+    }
+
+    @Name("movieRecommender.TitleLookup")
+    @Label("Title Lookup")
+    @Category({CATEGORY, "Query Phases"})
+    @StackTrace(false)
+    static final class TitleLookup extends Event {
+        @Label("Titles")
+        int titles;
+
+        @Label("Missing")
+        @Description("Movies without a title, which are not printed")
+        int missing;
+    }
+
+    @Name("movieRecommender.ResultWrite")
+    @Label("Result Write")
+    @Category({CATEGORY, "Query Phases"})
+    @StackTrace(false)
+    static final class ResultWrite extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+}
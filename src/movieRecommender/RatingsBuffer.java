@@ -0,0 +1,78 @@
+package movieRecommender;
+
+import java.util.Arrays;
+
+/**
+ * RatingsBuffer. A growable buffer of (movieId, rating) pairs stored in two
+ * primitive arrays. Used to collect the ratings of a user while loading, so that
+ * they can be inserted into the user's MovieRatingsList all at once.
+ */
+class RatingsBuffer {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] movieIds;
+    private double[] ratings;
+    private int size;
+
+    /**
+     * Creates an empty buffer
+     */
+    RatingsBuffer() {
+        movieIds = new int[DEFAULT_CAPACITY];
+        ratings = new double[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Adds a rating to the end of the buffer
+     * @param movieId id of the movie
+     * @param rating rating of the movie
+     */
+    void add(int movieId, double rating) {
+        if (size == movieIds.length) {
+            movieIds = Arrays.copyOf(movieIds, size * 2);
+            ratings = Arrays.copyOf(ratings, size * 2);
+        }
+        movieIds[size] = movieId;
+        ratings[size] = rating;
+        size++;
+    }
+
+    /**
+     * Adds all the ratings of another buffer to the end of this buffer
+     * @param other buffer to copy the ratings from
+     */
+    void addAll(RatingsBuffer other) {
+        if (size + other.size > movieIds.length) {
+            int capacity = Math.max(size + other.size, size * 2);
+            movieIds = Arrays.copyOf(movieIds, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+        }
+        System.arraycopy(other.movieIds, 0, movieIds, size, other.size);
+        System.arraycopy(other.ratings, 0, ratings, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Returns the number of ratings in the buffer
+     * @return number of ratings
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the array of movie ids. Only the first size() entries are used.
+     * @return movie ids
+     */
+    int[] movieIds() {
+        return movieIds;
+    }
+
+    /**
+     * Returns the array of ratings. Only the first size() entries are used.
+     * @return ratings
+     */
+    double[] ratings() {
+        return ratings;
+    }
+}
@@ -0,0 +1,230 @@
+package movieRecommender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RatingsFollower. Tails an append-only ratings file in the MovieLens csv format: every
+ * poll parses the complete lines added since the last poll with RatingsParser and passes
+ * them to a Sink as one batch. A line that is still being written (no newline yet) is
+ * left for the next poll. A malformed line is skipped and reported, so it does not hold
+ * back the lines after it. If the file gets shorter, it was replaced, and following
+ * starts again after its header.
+ */
+class RatingsFollower {
+    /** Number of ratings a batch can hold before its arrays grow */
+    private static final int INITIAL_BATCH = 256;
+
+    private static final Metrics.Counter SKIPPED = Metrics.counter("malformedRatingsSkipped");
+
+    /**
+     * Receives the ratings read by the follower, one call per poll that found new lines
+     */
+    interface Sink {
+        /**
+         * Called with the new ratings of the file, in file order
+         * @param userIds ids of the users
+         * @param movieIds ids of the movies, in the same order
+         * @param ratings ratings given by the users to the movies, in the same order
+         */
+        void ratings(int[] userIds, int[] movieIds, double[] ratings);
+    }
+
+    private final String filename;
+    private final Sink sink;
+    private long offset; // first byte not read yet, always at the beginning of a line
+    private ScheduledExecutorService executor; // polls the file, null until start is called
+
+    private final RatingsParser.Handler handler = (userId, movieId, rating, timestamp) -> add(userId, movieId, rating);
+    private int count;
+    private int[] userIds = new int[INITIAL_BATCH];
+    private int[] movieIds = new int[INITIAL_BATCH];
+    private double[] ratings = new double[INITIAL_BATCH];
+
+    /**
+     * Starts following the file at its current end, so only lines appended after this
+     * call are read
+     * @param filename name of the ratings file
+     * @param sink receives the new ratings
+     * @throws IOException if the file can not be read
+     */
+    RatingsFollower(String filename, Sink sink) throws IOException {
+        this.filename = filename;
+        this.sink = sink;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            offset = Math.max(RatingsParser.dataStart(channel), lineEnd(channel, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the complete lines appended to the file since the last poll and passes them
+     * to the sink. Malformed lines are skipped.
+     * @return number of ratings read
+     * @throws IOException if the file can not be read
+     */
+    synchronized int poll() throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                offset = RatingsParser.dataStart(channel);
+            }
+            long end = lineEnd(channel, offset, size);
+            if (end == offset) {
+                return 0;
+            }
+
+            count = 0;
+            try {
+                RatingsParser.parse(channel, offset, end, handler);
+            } catch (IOException e) {
+                // a malformed line, parse the lines one at a time to keep the others
+                count = 0;
+                parseEachLine(channel, offset, end);
+            }
+            offset = end;
+            if (count > 0) {
+                sink.ratings(Arrays.copyOf(userIds, count), Arrays.copyOf(movieIds, count),
+                        Arrays.copyOf(ratings, count));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Polls the file on a background thread until stop is called
+     * @param intervalMillis time between the end of a poll and the start of the next one
+     */
+    synchronized void start(long intervalMillis) {
+
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ratings-follower");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("File Input Unsuccessful");
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling the file, waiting for a poll that is running to finish
+     */
+    void stop() {
+
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        try {
+            running.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Private helper method that parses the lines between the two positions one at a
+     * time, skipping and reporting the malformed ones
+     * @param channel channel of the ratings file
+     * @param start first byte to parse, at the beginning of a line
+     * @param end last byte to parse, right after a newline
+     * @throws IOException if the file can not be read
+     */
+    private void parseEachLine(FileChannel channel, long start, long end) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        long lineStart = start;
+        long position = start;
+
+        while (position < end) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - position));
+            int read = channel.read(buf, position);
+            if (read <= 0) {
+                throw new IOException("Unexpected end of " + filename + " at byte " + position);
+            }
+            for (int i = 0; i < read; i++) {
+                if (buf.get(i) == '\n') {
+                    long lineEnd = position + i + 1;
+                    try {
+                        RatingsParser.parse(channel, lineStart, lineEnd, handler);
+                    } catch (IOException e) {
+                        SKIPPED.increment();
+                        System.out.println("Skipped malformed rating at byte " + lineStart + " of " + filename);
+                    }
+                    lineStart = lineEnd;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Private helper method that adds a rating to the batch, growing its arrays if needed
+     * @param userId id of the user
+     * @param movieId id of the movie
+     * @param rating rating given by the user to the movie
+     */
+    private void add(int userId, int movieId, double rating) {
+        if (count == userIds.length) {
+            userIds = Arrays.copyOf(userIds, 2 * count);
+            movieIds = Arrays.copyOf(movieIds, 2 * count);
+            ratings = Arrays.copyOf(ratings, 2 * count);
+        }
+        userIds[count] = userId;
+        movieIds[count] = movieId;
+        ratings[count] = rating;
+        count++;
+    }
+
+    /**
+     * Private helper method that finds the end of the last complete line between the
+     * two positions
+     * @param channel channel of the ratings file
+     * @param start first byte to look at, at the beginning of a line
+     * @param end last byte to look at, exclusive
+     * @return position right after the last newline, or start if there is none
+     * @throws IOException if the file can not be read
+     */
+    private static long lineEnd(FileChannel channel, long start, long end) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        while (end > start) {
+            int length = (int) Math.min(buf.capacity(), end - start);
+            long position = end - length;
+            buf.clear();
+            buf.limit(length);
+            while (buf.hasRemaining() && channel.read(buf, position + buf.position()) > 0) {
+                // read the rest of the block
+            }
+            for (int i = buf.position() - 1; i >= 0; i--) {
+                if (buf.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            end = position;
+        }
+        return start;
+    }
+}
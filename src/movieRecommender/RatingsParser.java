@@ -0,0 +1,260 @@
+package movieRecommender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RatingsParser. Reads a ratings file in the MovieLens csv format
+ * (userId,movieId,rating,timestamp) by scanning the raw bytes of a memory-mapped
+ * FileChannel. The fields of each line are decoded directly into primitives and
+ * passed to a Handler, so no Strings or other objects are created per line.
+ * The first line of the file is a header and is skipped.
+ */
+class RatingsParser {
+    private static final int WINDOW = 64 << 20; // bytes mapped at a time
+
+    /**
+     * Receives the ratings read by the parser, one call per line of the file.
+     */
+    interface Handler {
+        /**
+         * Called for every rating in the file
+         * @param userId id of the user
+         * @param movieId id of the movie
+         * @param rating rating given by the user to the movie
+         * @param timestamp time of the rating, in seconds since the epoch
+         */
+        void rating(int userId, int movieId, double rating, long timestamp);
+    }
+
+    /**
+     * Parses the whole ratings file with the given name
+     * @param filename name of the file that contains ratings
+     * @param handler receives every rating in the file
+     * @return number of ratings parsed
+     * @throws IOException if the file can not be read or a line is malformed
+     */
+    static long parse(String filename, Handler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            return parse(channel, dataStart(channel), channel.size(), handler);
+        }
+    }
+
+    /**
+     * Returns the position of the first byte after the header line of the file
+     * @param channel channel of the ratings file
+     * @return position where the ratings start
+     * @throws IOException if the file can not be read
+     */
+    static long dataStart(FileChannel channel) throws IOException {
+        long size = channel.size();
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 4096));
+        for (int i = 0; i < buf.limit(); i++) {
+            if (buf.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Splits the part of the file between the two positions into ranges of about the
+     * same size. Every range ends right after a newline (or at the end), so each one
+     * can be given to parse on its own. Some ranges may be empty.
+     * @param channel channel of the ratings file
+     * @param start first byte to split, at the beginning of a line
+     * @param end last byte to split, exclusive
+     * @param parts number of ranges
+     * @return parts + 1 positions, range i goes from bounds[i] to bounds[i + 1]
+     * @throws IOException if the file can not be read
+     */
+    static long[] split(FileChannel channel, long start, long end, int parts) throws IOException {
+
+        long[] bounds = new long[parts + 1];
+        bounds[0] = start;
+        bounds[parts] = end;
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+
+        for (int i = 1; i < parts; i++) {
+            long position = Math.max(bounds[i - 1], start + (end - start) * i / parts);
+            bounds[i] = end;
+
+            // move the boundary forward to the beginning of the next line
+            search:
+            while (position < end && position > start) {
+                buf.clear();
+                int read = channel.read(buf, position - 1);
+                if (read <= 0) {
+                    break;
+                }
+                for (int j = 0; j < read && position - 1 + j < end; j++) {
+                    if (buf.get(j) == '\n') {
+                        bounds[i] = position + j;
+                        break search;
+                    }
+                }
+                position += read;
+            }
+            if (position == start) {
+                bounds[i] = start;
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Parses the lines of the file between the two positions. The start position
+     * must be at the beginning of a line, and the end position must be right after
+     * the end of a line or at the end of the file.
+     * @param channel channel of the ratings file
+     * @param start first byte to parse, inclusive
+     * @param end last byte to parse, exclusive
+     * @param handler receives every rating in the range
+     * @return number of ratings parsed
+     * @throws IOException if the file can not be read or a line is malformed
+     */
+    static long parse(FileChannel channel, long start, long end, Handler handler) throws IOException {
+
+        long count = 0;
+        long position = start;
+
+        while (position < end) {
+            int length = (int) Math.min(end - position, WINDOW);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            // only parse complete lines, the rest is mapped again with the next window
+            int limit = length;
+            if (position + length < end) {
+                while (limit > 0 && buf.get(limit - 1) != '\n') {
+                    limit--;
+                }
+                if (limit == 0) {
+                    throw new IOException("Line longer than " + WINDOW + " bytes at byte " + position);
+                }
+            }
+            count += parseLines(buf, limit, position, handler);
+            position += limit;
+        }
+        return count;
+    }
+
+    /**
+     * Private helper method that parses all the lines in the first limit bytes of the buffer
+     * @param buf mapped part of the file
+     * @param limit number of bytes to parse, ends with a complete line
+     * @param offset position of the buffer in the file, used for error messages
+     * @param handler receives every rating
+     * @return number of ratings parsed
+     * @throws IOException if a line is malformed
+     */
+    private static long parseLines(MappedByteBuffer buf, int limit, long offset, Handler handler)
+            throws IOException {
+
+        long count = 0;
+        int i = 0;
+
+        while (i < limit) {
+            byte b = buf.get(i);
+            if (b == '\n' || b == '\r') {
+                i++; // blank line or the second half of \r\n
+                continue;
+            }
+            int lineStart = i;
+
+            int userId = 0;
+            while (i < limit && (b = buf.get(i)) >= '0' && b <= '9') {
+                userId = userId * 10 + (b - '0');
+                i++;
+            }
+            i = expect(buf, i, limit, ',', offset + lineStart);
+
+            int movieId = 0;
+            while (i < limit && (b = buf.get(i)) >= '0' && b <= '9') {
+                movieId = movieId * 10 + (b - '0');
+                i++;
+            }
+            i = expect(buf, i, limit, ',', offset + lineStart);
+
+            long digits = 0;
+            long scale = 1;
+            while (i < limit && (b = buf.get(i)) >= '0' && b <= '9') {
+                digits = digits * 10 + (b - '0');
+                i++;
+            }
+            if (i < limit && buf.get(i) == '.') {
+                i++;
+                while (i < limit && (b = buf.get(i)) >= '0' && b <= '9') {
+                    digits = digits * 10 + (b - '0');
+                    scale *= 10;
+                    i++;
+                }
+            }
+            double rating = (double) digits / scale;
+
+            long timestamp = 0;
+            if (i < limit && buf.get(i) == ',') {
+                i++;
+                while (i < limit && (b = buf.get(i)) >= '0' && b <= '9') {
+                    timestamp = timestamp * 10 + (b - '0');
+                    i++;
+                }
+            }
+
+            if (i < limit && buf.get(i) == '\r') {
+                i++;
+            }
+            if (i < limit && buf.get(i) != '\n') {
+                throw new IOException("Malformed rating at byte " + (offset + lineStart));
+            }
+            i++;
+
+            handler.rating(userId, movieId, rating, timestamp);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Private helper method that checks that the byte at the given index is the expected separator
+     * @param buf mapped part of the file
+     * @param i index of the separator
+     * @param limit number of bytes that can be read
+     * @param separator expected byte
+     * @param lineStart position of the line in the file, used for error messages
+     * @return index right after the separator
+     * @throws IOException if the byte is not the expected separator
+     */
+    private static int expect(MappedByteBuffer buf, int i, int limit, char separator, long lineStart)
+            throws IOException {
+        if (i >= limit || buf.get(i) != separator) {
+            throw new IOException("Malformed rating at byte " + lineStart);
+        }
+        return i + 1;
+    }
+
+    /**
+     * Parses the given ratings file and prints how many ratings were read and the
+     * throughput of the parser in MB/s.
+     * @param args name of the ratings file
+     * @throws IOException if the file can not be read
+     */
+    public static void main(String[] args) throws IOException {
+
+        String filename = args.length > 0 ? args[0] : "ratings.csv";
+        long bytes = Files.size(Paths.get(filename));
+        long[] checksum = new long[1];
+
+        long start = System.nanoTime();
+        long count = parse(filename, (userId, movieId, rating, timestamp) ->
+                checksum[0] += userId + movieId + (long) (rating * 2));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Parsed %d ratings (%.1f MB) in %.3f s: %.1f MB/s (checksum %d)%n",
+                count, bytes / 1e6, seconds, bytes / 1e6 / seconds, checksum[0]);
+    }
+}
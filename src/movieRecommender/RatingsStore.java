@@ -0,0 +1,195 @@
+package movieRecommender;
+
+import java.util.Arrays;
+
+/**
+ * RatingsStore. A read-optimized, compressed sparse row (CSR) copy of all the ratings
+ * in a UsersList. The ratings of every user are stored back to back in two
+ * contiguous arrays (movie ids and ratings), in the same order as in the user's
+ * MovieRatingsList (from highest to lowest rating). The ratings of the user in row r
+ * occupy positions offsets[r] (inclusive) to offsets[r + 1] (exclusive).
+ *
+ * Every row is also stored a second time sorted by movie id, which is the order the
+ * SimilarityKernel needs to find the movies two users have in common.
+ *
+ * Ratings are kept as floats, which represent the half-star MovieLens scale exactly.
+ * The store is never modified once built; a MovieRatingsList that needs to change
+ * copies its own range back into nodes first.
+ */
+class RatingsStore {
+    private int[] offsets;
+    private int[] movieIds;
+    private float[] ratings;
+    private int[] movieIdsById;
+    private float[] ratingsById;
+
+    /**
+     * Private constructor, use build to create a store
+     * @param offsets start of each row, plus the end of the last row
+     * @param movieIds movie ids of all ratings
+     * @param ratings all ratings
+     * @param movieIdsById movie ids of all ratings, each row sorted by movie id
+     * @param ratingsById all ratings, in the same order as movieIdsById
+     */
+    private RatingsStore(int[] offsets, int[] movieIds, float[] ratings, int[] movieIdsById, float[] ratingsById) {
+        this.offsets = offsets;
+        this.movieIds = movieIds;
+        this.ratings = ratings;
+        this.movieIdsById = movieIdsById;
+        this.ratingsById = ratingsById;
+    }
+
+    /**
+     * Creates a store from existing columns, for example ones read from a snapshot file
+     * @param offsets start of each row, plus the end of the last row
+     * @param movieIds movie ids of all ratings
+     * @param ratings all ratings
+     * @param movieIdsById movie ids of all ratings, each row sorted by movie id
+     * @param ratingsById all ratings, in the same order as movieIdsById
+     * @return new RatingsStore that uses the given arrays
+     */
+    static RatingsStore of(int[] offsets, int[] movieIds, float[] ratings, int[] movieIdsById, float[] ratingsById) {
+        return new RatingsStore(offsets, movieIds, ratings, movieIdsById, ratingsById);
+    }
+
+    /**
+     * Copies the ratings of all users that follow the given dummy head into a new store.
+     * Row r of the store holds the ratings of the r-th user of the list.
+     * @param head dummy head of the UsersList
+     * @param numUsers number of users in the list
+     * @return new RatingsStore
+     */
+    static RatingsStore build(UserNode head, int numUsers) {
+
+        int[] offsets = new int[numUsers + 1];
+        int row = 0;
+        int total = 0;
+
+        for (UserNode user = head.next(); user != null; user = user.next()) {
+            offsets[row] = total;
+            total += user.getMovieRatings().size();
+            row++;
+        }
+        offsets[row] = total;
+
+        int[] movieIds = new int[total];
+        float[] ratings = new float[total];
+        int pos = 0;
+
+        for (UserNode user = head.next(); user != null; user = user.next()) {
+            for (MovieRatingNode x: user.getMovieRatings()) {
+                movieIds[pos] = x.getMovieId();
+                ratings[pos] = (float) x.getMovieRating();
+                pos++;
+            }
+        }
+
+        int[] movieIdsById = new int[total];
+        float[] ratingsById = new float[total];
+        for (row = 0; row < numUsers; row++) {
+            sortById(movieIds, ratings, offsets[row], offsets[row + 1], movieIdsById, ratingsById, offsets[row]);
+        }
+        return new RatingsStore(offsets, movieIds, ratings, movieIdsById, ratingsById);
+    }
+
+    /**
+     * Copies a range of ratings into the output arrays, sorted by movie id from lowest to highest.
+     * @param movieIds movie ids to copy
+     * @param ratings ratings to copy
+     * @param from first position to copy, inclusive
+     * @param to last position to copy, exclusive
+     * @param idsOut array to copy the movie ids to
+     * @param ratingsOut array to copy the ratings to
+     * @param outFrom position of the first copied rating in the output arrays
+     */
+    static void sortById(int[] movieIds, float[] ratings, int from, int to,
+                         int[] idsOut, float[] ratingsOut, int outFrom) {
+
+        // pack (movie id, rating bits) into longs, so a primitive sort orders them by id
+        long[] packed = new long[to - from];
+        for (int i = from; i < to; i++) {
+            packed[i - from] = ((long) movieIds[i] << 32) | (Float.floatToIntBits(ratings[i]) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < packed.length; i++) {
+            idsOut[outFrom + i] = (int) (packed[i] >> 32);
+            ratingsOut[outFrom + i] = Float.intBitsToFloat((int) packed[i]);
+        }
+    }
+
+    /**
+     * Returns the number of rows (users) in the store
+     * @return number of rows
+     */
+    int rows() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the total number of ratings in the store
+     * @return number of ratings
+     */
+    int size() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Returns the position of the first rating of the given row
+     * @param row row of the user
+     * @return start position, inclusive
+     */
+    int rowStart(int row) {
+        return offsets[row];
+    }
+
+    /**
+     * Returns the position right after the last rating of the given row
+     * @param row row of the user
+     * @return end position, exclusive
+     */
+    int rowEnd(int row) {
+        return offsets[row + 1];
+    }
+
+    /**
+     * Returns the movie id stored at the given position
+     * @param pos position in the store
+     * @return movie id
+     */
+    int movieId(int pos) {
+        return movieIds[pos];
+    }
+
+    /**
+     * Returns the rating stored at the given position
+     * @param pos position in the store
+     * @return rating
+     */
+    double rating(int pos) {
+        return ratings[pos];
+    }
+
+    /**
+     * Returns the movie ids of all rows, each row sorted by movie id
+     * @return array of movie ids, rows start at rowStart
+     */
+    int[] movieIdsById() {
+        return movieIdsById;
+    }
+
+    /**
+     * Returns the ratings of all rows, in the same order as movieIdsById
+     * @return array of ratings, rows start at rowStart
+     */
+    float[] ratingsById() {
+        return ratingsById;
+    }
+
+    /**
+     * Returns the approximate number of bytes of heap used by the arrays of the store
+     * @return size in bytes
+     */
+    long sizeInBytes() {
+        return 4L * offsets.length + 8L * movieIds.length + 8L * movieIdsById.length;
+    }
+}
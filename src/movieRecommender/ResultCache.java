@@ -0,0 +1,119 @@
+package movieRecommender;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ResultCache. Keeps the movie ids computed by recent recommendation queries, keyed by
+ * the user id, the number of movies asked for and the kind of query, so that a repeated
+ * query is a hash lookup instead of a scan over all users.
+ *
+ * Every entry remembers the model version (see UsersList.version) it was computed at.
+ * Any change to the ratings of the model changes the version, and an entry of another
+ * version is never returned. The least recently used entries are dropped once the
+ * cache holds maxEntries results.
+ */
+class ResultCache {
+    static final int RECOMMENDATIONS = 0;
+    static final int ANTI_RECOMMENDATIONS = 1;
+
+    private final Map<Long, Result> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates an empty cache
+     * @param maxEntries maximum number of results to keep, 0 to keep none
+     */
+    ResultCache(int maxEntries) {
+        this.entries = new LinkedHashMap<Long, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Result> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a query, if it was computed at the given model version
+     * @param userId id of the user
+     * @param num number of movies asked for
+     * @param kind RECOMMENDATIONS or ANTI_RECOMMENDATIONS
+     * @param version current model version
+     * @return movie ids, which must not be modified, or null if there is no valid result
+     */
+    synchronized int[] get(int userId, int num, int kind, long version) {
+        Result entry = entries.get(key(userId, num, kind));
+        if (entry == null || entry.version != version) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.movieIds;
+    }
+
+    /**
+     * Stores the result of a query
+     * @param userId id of the user
+     * @param num number of movies asked for
+     * @param kind RECOMMENDATIONS or ANTI_RECOMMENDATIONS
+     * @param version model version the result was computed at
+     * @param movieIds movie ids of the result
+     */
+    synchronized void put(int userId, int num, int kind, long version, int[] movieIds) {
+        entries.put(key(userId, num, kind), new Result(version, movieIds));
+    }
+
+    /**
+     * Drops all results, for changes that do not show in the model version
+     * (for example a new neighbor table)
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of queries answered from the cache
+     * @return number of hits
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of queries that had to be computed
+     * @return number of misses
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Private helper method that packs a query into a key
+     * @param userId id of the user
+     * @param num number of movies asked for
+     * @param kind kind of query
+     * @return key of the query
+     */
+    private static long key(int userId, int num, int kind) {
+        return ((long) userId << 32) | ((long) num << 1 & 0xFFFFFFFEL) | kind;
+    }
+
+    /**
+     * A cached result and the model version it was computed at
+     */
+    private static final class Result {
+        final long version;
+        final int[] movieIds;
+
+        /**
+         * Creates an entry
+         * @param version model version
+         * @param movieIds movie ids of the result
+         */
+        Result(long version, int[] movieIds) {
+            this.version = version;
+            this.movieIds = movieIds;
+        }
+    }
+}
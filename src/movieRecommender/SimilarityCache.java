@@ -0,0 +1,192 @@
+package movieRecommender;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SimilarityCache. A bounded cache of the similarity scores of pairs of users, so that
+ * repeated queries for the same users do not compute the same scores again.
+ *
+ * The pair of user ids is packed into a long key. The cache is set associative: a key
+ * can only be stored in one of the WAYS slots of the set its hash selects, and when the
+ * set is full the CLOCK algorithm picks the slot to reuse (a slot that was read since
+ * the hand last passed it gets a second chance), which approximates LRU eviction
+ * without keeping any lists. All data is kept in primitive arrays, about 25 bytes per
+ * entry, and the sets are guarded by a fixed number of locks so threads can share it.
+ *
+ * Every entry also stores the versions of the two users' ratings when the score was
+ * computed. Any change to the ratings of a user (UsersList.insert,
+ * MovieRatingsList.setRating, ...) changes the version, so the entries of that user
+ * are no longer returned and are replaced by the next computation.
+ */
+public class SimilarityCache {
+    /** Number of slots per set */
+    private static final int WAYS = 8;
+    /** Number of locks shared by the sets */
+    private static final int STRIPES = 64;
+    private static final byte USED = 1;
+    private static final byte REFERENCED = 2;
+
+    private final long[] keys;
+    private final long[] stamps; // versions of the ratings of both users
+    private final double[] values;
+    private final byte[] flags;
+    private final byte[] hands; // clock hand of each set
+    private final int mask;
+    private final Object[] locks;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache
+     * @param maxEntries maximum number of pairs to keep; the capacity is rounded down to
+     *                   a power of two times the number of slots per set (at least one set)
+     */
+    public SimilarityCache(int maxEntries) {
+        int sets = Integer.highestOneBit(Math.max(1, maxEntries / WAYS));
+        this.mask = sets - 1;
+        this.keys = new long[sets * WAYS];
+        this.stamps = new long[sets * WAYS];
+        this.values = new double[sets * WAYS];
+        this.flags = new byte[sets * WAYS];
+        this.hands = new byte[sets];
+        this.locks = new Object[Math.min(STRIPES, sets)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the similarity of two users, from the cache if it holds a score computed
+     * with their current ratings, otherwise computes it with UserNode.computeSimilarity
+     * and caches it
+     * @param user first user
+     * @param other second user
+     * @return similarity score
+     */
+    public double similarity(UserNode user, UserNode other) {
+
+        UserNode low = user.getId() <= other.getId() ? user : other;
+        UserNode high = low == user ? other : user;
+        long key = pack(low.getId(), high.getId());
+        long stamp = pack(low.getMovieRatings().version(), high.getMovieRatings().version());
+        int set = set(key);
+
+        synchronized (locks[set & (locks.length - 1)]) {
+            for (int i = set * WAYS; i < (set + 1) * WAYS; i++) {
+                if (flags[i] != 0 && keys[i] == key && stamps[i] == stamp) {
+                    flags[i] |= REFERENCED;
+                    hits.increment();
+                    return values[i];
+                }
+            }
+        }
+
+        misses.increment();
+        double value = user.computeSimilarity(other);
+        put(set, key, stamp, value);
+        return value;
+    }
+
+    /**
+     * Private helper method that stores a score in its set, in the slot of the same pair
+     * if there is one, else in a free slot, else in the slot chosen by the clock hand
+     * @param set set of the key
+     * @param key packed user ids
+     * @param stamp packed versions of the ratings of the users
+     * @param value similarity score
+     */
+    private void put(int set, long key, long stamp, double value) {
+
+        synchronized (locks[set & (locks.length - 1)]) {
+            int base = set * WAYS;
+            int slot = -1;
+            for (int i = base; i < base + WAYS; i++) {
+                if (flags[i] != 0 && keys[i] == key) {
+                    slot = i;
+                    break;
+                }
+                if (flags[i] == 0 && slot < 0) {
+                    slot = i;
+                }
+            }
+            if (slot < 0) {
+                int hand = hands[set];
+                while ((flags[base + hand] & REFERENCED) != 0) {
+                    flags[base + hand] &= ~REFERENCED;
+                    hand = (hand + 1) % WAYS;
+                }
+                slot = base + hand;
+                hands[set] = (byte) ((hand + 1) % WAYS);
+                evictions.increment();
+            }
+            keys[slot] = key;
+            stamps[slot] = stamp;
+            values[slot] = value;
+            flags[slot] = USED;
+        }
+    }
+
+    /**
+     * Private helper method that packs two ints into a long
+     * @param high int stored in the high 32 bits
+     * @param low int stored in the low 32 bits
+     * @return packed value
+     */
+    private static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Private helper method that finds the set of a key
+     * @param key packed user ids
+     * @return index of the set
+     */
+    private int set(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the maximum number of pairs the cache can hold
+     * @return capacity in entries
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the number of lookups that found a valid score
+     * @return number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to compute the score
+     * (the pair was never cached, was evicted, or a user's ratings changed)
+     * @return number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries dropped to make room for other pairs
+     * @return number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that were hits
+     * @return hit rate between 0 and 1, 0 if there were no lookups
+     */
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
@@ -0,0 +1,378 @@
+package movieRecommender;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * SimilarityKernel. Computes Pearson's correlation coefficient between the ratings of
+ * two users. The ratings of each user are given as a range of two parallel arrays
+ * (movie ids and ratings) sorted by movie id, so the movies rated by both users are
+ * found with a merge join, without any lookups or allocation. When one user has rated
+ * many more movies than the other, the kernel walks the smaller list and gallops
+ * (exponential, then binary search) through the larger one.
+ *
+ * The merge join is branch-free: both positions advance by the result of a comparison
+ * instead of taking one of three branches, which the CPU can not predict on real
+ * data. The sums are added in the same order as in the plain merge (mergeScalar), so
+ * the results are identical. The merge stays scalar: its two positions depend on the
+ * data, which the lanes of a vector can not follow.
+ *
+ * Also holds the dense dot product used to score movies with latent factors. If the
+ * class VectorKernel and the jdk.incubator.vector module are present, it runs with the
+ * Vector API; otherwise, or with -DmovieRecommender.vector=false, it is a plain loop.
+ */
+final class SimilarityKernel {
+    /** Use galloping when one list is at least this many times longer than the other */
+    static final int GALLOP_RATIO = 8;
+    /** Dot product with the Vector API, null to use dotScalar */
+    private static final Dot VECTOR_DOT = Boolean.parseBoolean(System.getProperty("movieRecommender.vector", "true"))
+            ? vectorKernel() : null;
+
+    /**
+     * A dot product of two ranges of floats
+     */
+    interface Dot {
+        /**
+         * Computes the dot product of two ranges of floats
+         * @param a first array
+         * @param aFrom first position in a
+         * @param b second array
+         * @param bFrom first position in b
+         * @param length number of values to multiply
+         * @return dot product
+         */
+        float dot(float[] a, int aFrom, float[] b, int bFrom, int length);
+    }
+
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private SimilarityKernel() {
+    }
+
+    /**
+     * Computes Pearson's correlation between the ratings x and the ratings y, over the
+     * movies that both rated. Returns NaN if they have no movies in common.
+     * @param xIds movie ids of x, sorted from lowest to highest within the range
+     * @param xRatings ratings of x, in the same order as xIds
+     * @param xFrom first position of x, inclusive
+     * @param xTo last position of x, exclusive
+     * @param yIds movie ids of y, sorted from lowest to highest within the range
+     * @param yRatings ratings of y, in the same order as yIds
+     * @param yFrom first position of y, inclusive
+     * @param yTo last position of y, exclusive
+     * @return similarity computed using Pearson's correlation coefficient
+     */
+    static double pearson(int[] xIds, float[] xRatings, int xFrom, int xTo,
+                          int[] yIds, float[] yRatings, int yFrom, int yTo) {
+
+        long nx = xTo - xFrom;
+        long ny = yTo - yFrom;
+
+        // the coefficient is symmetric, so the shorter list can always be called x
+        if (nx * GALLOP_RATIO <= ny) {
+            return gallop(xIds, xRatings, xFrom, xTo, yIds, yRatings, yFrom, yTo);
+        }
+        if (ny * GALLOP_RATIO <= nx) {
+            return gallop(yIds, yRatings, yFrom, yTo, xIds, xRatings, xFrom, xTo);
+        }
+
+        int n = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumX2 = 0;
+        double sumY2 = 0;
+        double sumXY = 0;
+        int i = xFrom;
+        int j = yFrom;
+
+        while (i < xTo && j < yTo) {
+            int idX = xIds[i];
+            int idY = yIds[j];
+            if (idX == idY) {
+                double x = xRatings[i];
+                double y = yRatings[j];
+                n++;
+                sumX += x;
+                sumY += y;
+                sumXY += x * y;
+                sumX2 += x * x;
+                sumY2 += y * y;
+            }
+            i += idX <= idY ? 1 : 0;
+            j += idX >= idY ? 1 : 0;
+        }
+        return coefficient(n, sumX, sumY, sumX2, sumY2, sumXY);
+    }
+
+    /**
+     * Computes Pearson's correlation like pearson, with a plain merge join that branches
+     * on every comparison and never gallops. Kept as the reference for tests and benchmarks.
+     * @param xIds movie ids of x, sorted from lowest to highest within the range
+     * @param xRatings ratings of x, in the same order as xIds
+     * @param xFrom first position of x, inclusive
+     * @param xTo last position of x, exclusive
+     * @param yIds movie ids of y, sorted from lowest to highest within the range
+     * @param yRatings ratings of y, in the same order as yIds
+     * @param yFrom first position of y, inclusive
+     * @param yTo last position of y, exclusive
+     * @return similarity computed using Pearson's correlation coefficient
+     */
+    static double mergeScalar(int[] xIds, float[] xRatings, int xFrom, int xTo,
+                              int[] yIds, float[] yRatings, int yFrom, int yTo) {
+
+        int n = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumX2 = 0;
+        double sumY2 = 0;
+        double sumXY = 0;
+        int i = xFrom;
+        int j = yFrom;
+
+        while (i < xTo && j < yTo) {
+            int idX = xIds[i];
+            int idY = yIds[j];
+            if (idX < idY) {
+                i++;
+            } else if (idX > idY) {
+                j++;
+            } else {
+                double x = xRatings[i];
+                double y = yRatings[j];
+                n++;
+                sumX += x;
+                sumY += y;
+                sumXY += x * y;
+                sumX2 += x * x;
+                sumY2 += y * y;
+                i++;
+                j++;
+            }
+        }
+        return coefficient(n, sumX, sumY, sumX2, sumY2, sumXY);
+    }
+
+    /**
+     * Private helper method that computes the correlation by walking the short list x
+     * and galloping through the long list y
+     * @param xIds movie ids of the short list
+     * @param xRatings ratings of the short list
+     * @param xFrom first position of x, inclusive
+     * @param xTo last position of x, exclusive
+     * @param yIds movie ids of the long list
+     * @param yRatings ratings of the long list
+     * @param yFrom first position of y, inclusive
+     * @param yTo last position of y, exclusive
+     * @return similarity computed using Pearson's correlation coefficient
+     */
+    private static double gallop(int[] xIds, float[] xRatings, int xFrom, int xTo,
+                                 int[] yIds, float[] yRatings, int yFrom, int yTo) {
+
+        int n = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumX2 = 0;
+        double sumY2 = 0;
+        double sumXY = 0;
+        int j = yFrom;
+
+        for (int i = xFrom; i < xTo && j < yTo; i++) {
+            int id = xIds[i];
+
+            // find the first position in y with a movie id >= id
+            int step = 1;
+            int low = j;
+            while (j + step < yTo && yIds[j + step] < id) {
+                low = j + step;
+                step <<= 1;
+            }
+            int high = Math.min(j + step, yTo - 1);
+            if (yIds[low] >= id) {
+                high = low;
+            }
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (yIds[middle] < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            j = low;
+
+            if (yIds[j] == id) {
+                double x = xRatings[i];
+                double y = yRatings[j];
+                n++;
+                sumX += x;
+                sumY += y;
+                sumXY += x * y;
+                sumX2 += x * x;
+                sumY2 += y * y;
+                j++;
+            } else if (yIds[j] < id) {
+                j = yTo; // every movie left in y has a smaller id
+            }
+        }
+        return coefficient(n, sumX, sumY, sumX2, sumY2, sumXY);
+    }
+
+    /**
+     * Computes the dot product of two ranges of floats, with the Vector API kernel if it
+     * was loaded and with dotScalar otherwise
+     * @param a first array
+     * @param aFrom first position in a
+     * @param b second array
+     * @param bFrom first position in b
+     * @param length number of values to multiply
+     * @return dot product
+     */
+    static float dot(float[] a, int aFrom, float[] b, int bFrom, int length) {
+        if (VECTOR_DOT != null) {
+            return VECTOR_DOT.dot(a, aFrom, b, bFrom, length);
+        }
+        return dotScalar(a, aFrom, b, bFrom, length);
+    }
+
+    /**
+     * Computes the dot product of two ranges of floats with a plain loop. The JIT
+     * compiler keeps the additions in order, as float addition is not associative, so
+     * the sum is not turned into SIMD adds.
+     * @param a first array
+     * @param aFrom first position in a
+     * @param b second array
+     * @param bFrom first position in b
+     * @param length number of values to multiply
+     * @return dot product
+     */
+    static float dotScalar(float[] a, int aFrom, float[] b, int bFrom, int length) {
+        float sum = 0;
+        for (int k = 0; k < length; k++) {
+            sum += a[aFrom + k] * b[bFrom + k];
+        }
+        return sum;
+    }
+
+    /**
+     * Private helper method that loads the Vector API kernel by reflection, so this class
+     * still works where the kernel or the jdk.incubator.vector module are missing
+     * @return the kernel, or null if it can not be loaded or its vector size is not supported
+     */
+    private static Dot vectorKernel() {
+        try {
+            return (Dot) Class.forName("movieRecommender.VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes Pearson's correlation coefficient from the sums over the common movies
+     * @param n number of movies rated by both users
+     * @param sumX sum of the ratings of x
+     * @param sumY sum of the ratings of y
+     * @param sumX2 sum of the squared ratings of x
+     * @param sumY2 sum of the squared ratings of y
+     * @param sumXY sum of the products of the ratings of x and y
+     * @return the coefficient, NaN if it is not defined
+     */
+    static double coefficient(int n, double sumX, double sumY, double sumX2, double sumY2, double sumXY) {
+        double denominatorTerm1 = Math.sqrt((n * sumX2) - (sumX * sumX));
+        double denominatorTerm2 = Math.sqrt((n * sumY2) - (sumY * sumY));
+        double numerator = (n * sumXY) - (sumX * sumY);
+        return numerator / (denominatorTerm1 * denominatorTerm2);
+    }
+
+    /**
+     * Compares the Pearson kernel with the plain merge and prints the speed of both over
+     * every pair of users of the ratings file, then prints the throughput of the dot
+     * product for random factor vectors of several lengths, with the plain loop and with
+     * dot, which uses the Vector API kernel if it was loaded. Run it once per vector size
+     * to compare the sizes (see vector/README.md).
+     * @param args name of the ratings file
+     * @throws IOException if the file can not be read
+     */
+    public static void main(String[] args) throws IOException {
+
+        UsersList users = new UsersList();
+        RatingsParser.parse(args.length > 0 ? args[0] : "ratings.csv",
+                (userId, movieId, rating, timestamp) -> users.insertBuffered(userId, movieId, rating));
+        users.compact();
+        RatingsStore store = users.store();
+        int[] ids = store.movieIdsById();
+        float[] ratings = store.ratingsById();
+        int rows = store.rows();
+
+        for (int round = 0; round < 3; round++) {
+            double maxDifference = 0;
+            long[] nanos = new long[2];
+            for (int p = 0; p < rows; p++) {
+                for (int q = p + 1; q < rows; q++) {
+                    long start = System.nanoTime();
+                    double reference = mergeScalar(ids, ratings, store.rowStart(p), store.rowEnd(p),
+                            ids, ratings, store.rowStart(q), store.rowEnd(q));
+                    long middle = System.nanoTime();
+                    double fast = pearson(ids, ratings, store.rowStart(p), store.rowEnd(p),
+                            ids, ratings, store.rowStart(q), store.rowEnd(q));
+                    nanos[0] += middle - start;
+                    nanos[1] += System.nanoTime() - middle;
+                    if (!Double.isNaN(reference)) {
+                        maxDifference = Math.max(maxDifference, Math.abs(reference - fast));
+                    }
+                }
+            }
+            System.out.printf("pearson, %d pairs: scalar merge %.1f ms, kernel %.1f ms (max difference %.2e)%n",
+                    (long) rows * (rows - 1) / 2, nanos[0] / 1e6, nanos[1] / 1e6, maxDifference);
+        }
+
+        System.out.println("dot kernel: " + (VECTOR_DOT != null ? VECTOR_DOT : "scalar"));
+        SplittableRandom random = new SplittableRandom(1);
+        for (int length: new int[] {8, 16, 32, 64, 128}) {
+            int vectors = (1 << 20) / length;
+            float[] a = new float[vectors * length];
+            float[] b = new float[length];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = (float) random.nextDouble();
+            }
+            for (int i = 0; i < b.length; i++) {
+                b[i] = (float) random.nextDouble();
+            }
+            double maxDifference = 0;
+            for (int v = 0; v < vectors; v++) {
+                float reference = dotScalar(a, v * length, b, 0, length);
+                maxDifference = Math.max(maxDifference, Math.abs(dot(a, v * length, b, 0, length) - reference) / reference);
+            }
+            long scalar = timeDot(false, a, b, vectors, length);
+            long kernel = timeDot(true, a, b, vectors, length);
+            System.out.printf("dot, length %3d: scalar %.2f GFLOP/s, kernel %.2f GFLOP/s (max relative difference %.1e)%n",
+                    length, 2.0 * a.length / scalar, 2.0 * a.length / kernel, maxDifference);
+        }
+    }
+
+    /**
+     * Private helper method that measures the best time of 20 rounds of dot products of
+     * every vector of a with b
+     * @param kernel true to use dot, false to use dotScalar
+     * @param a vectors one after the other
+     * @param b vector to multiply with
+     * @param vectors number of vectors in a
+     * @param length length of the vectors
+     * @return best time of a round, in nanoseconds
+     */
+    private static long timeDot(boolean kernel, float[] a, float[] b, int vectors, int length) {
+        long best = Long.MAX_VALUE;
+        float checksum = 0;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int v = 0; v < vectors; v++) {
+                checksum += kernel ? dot(a, v * length, b, 0, length) : dotScalar(a, v * length, b, 0, length);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (checksum == Float.NEGATIVE_INFINITY) {
+            System.out.println(checksum); // keeps the products from being optimized away
+        }
+        return best;
+    }
+}
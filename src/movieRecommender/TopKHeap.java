@@ -0,0 +1,148 @@
+package movieRecommender;
+
+/**
+ * TopKHeap. Keeps the k best (id, score) pairs offered to it, using a bounded
+ * min-heap stored in two primitive arrays. The root of the heap is the worst pair
+ * kept so far, so a new pair only has to be compared with the root.
+ * A pair is better than another if its score is higher, or if the scores are equal
+ * and its id is lower. This makes the result independent of the order of the offers.
+ */
+class TopKHeap {
+    private int[] ids;
+    private double[] scores;
+    private int size;
+
+    /**
+     * Creates an empty heap
+     * @param k maximum number of pairs to keep
+     */
+    TopKHeap(int k) {
+        ids = new int[Math.max(k, 0)];
+        scores = new double[Math.max(k, 0)];
+    }
+
+    /**
+     * Returns the number of pairs kept
+     * @return number of pairs
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Offers a pair to the heap. It is kept if the heap is not full, or if it is
+     * better than the worst pair kept, which is then dropped. NaN scores are ignored.
+     * @param id id of the pair
+     * @param score score of the pair
+     */
+    void offer(int id, double score) {
+        if (Double.isNaN(score) || ids.length == 0) {
+            return;
+        }
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size);
+            size++;
+        } else if (better(id, score, ids[0], scores[0])) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Offers all pairs kept by another heap to this heap
+     * @param other heap to take the pairs from
+     */
+    void offerAll(TopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Empties the heap and returns the ids of the pairs it kept, from best to worst.
+     * The scores of the pairs, in the same order, are copied into the given array if it is not null.
+     * @param scoresOut array of length at least size() that receives the scores, or null
+     * @return ids from best to worst
+     */
+    int[] drain(double[] scoresOut) {
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = ids[0];
+            if (scoresOut != null) {
+                scoresOut[i] = scores[0];
+            }
+            size--;
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    /**
+     * Private helper method that returns true if the first pair is better than the second one
+     * @param id1 id of the first pair
+     * @param score1 score of the first pair
+     * @param id2 id of the second pair
+     * @param score2 score of the second pair
+     * @return true if the first pair is better
+     */
+    private static boolean better(int id1, double score1, int id2, double score2) {
+        return score1 > score2 || (score1 == score2 && id1 < id2);
+    }
+
+    /**
+     * Private helper method that moves the pair at the given position up until the heap is valid
+     * @param i position of the pair
+     */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!better(ids[parent], scores[parent], ids[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    /**
+     * Private helper method that moves the pair at the given position down until the heap is valid
+     * @param i position of the pair
+     */
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && better(ids[worst], scores[worst], ids[left], scores[left])) {
+                worst = left;
+            }
+            if (right < size && better(ids[worst], scores[worst], ids[right], scores[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    /**
+     * Private helper method that swaps two pairs of the heap
+     * @param i position of the first pair
+     * @param j position of the second pair
+     */
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -1,6 +1,7 @@
 package movieRecommender;
 
 import javax.swing.text.html.HTMLDocument;
+import java.util.Arrays;
 
 /** UserNode. The class represents a node in the UsersList.
  *  Stores a userId, a list of ratings of type MovieRatingsList,
@@ -10,6 +11,11 @@ public class UserNode {
     private int userId;
     private MovieRatingsList movieRatings;
     private UserNode nextUser;
+    private RatingsBuffer pending; // ratings waiting to be inserted, see buffer
+    int position = -1; // position of the node in its UsersList, set by UsersList.append
+    private long[] seen; // bitset of the rated movies over the indices of seenIndex, built by hasSeen
+    private MovieIndex seenIndex;
+    private int seenVersion; // version of movieRatings that seen matches
 
     /** A constructor for the UserNode.
      * @param id User id
@@ -56,6 +62,30 @@ public class UserNode {
         return movieRatings;
     }
 
+    /**
+     * Returns the number of movies this user has rated
+     * @return number of ratings
+     */
+    public int getRatingCount() {
+        return movieRatings.size();
+    }
+
+    /**
+     * Returns the average rating given by this user, kept up to date as ratings change
+     * @return mean rating, 0 if the user has no ratings
+     */
+    public double getMeanRating() {
+        return movieRatings.getMeanRating();
+    }
+
+    /**
+     * Returns the Euclidean norm of this user's ratings
+     * @return norm of the ratings
+     */
+    public double getRatingNorm() {
+        return movieRatings.getRatingNorm();
+    }
+
     /**
      * Add rating info for a given movie to the MovieRatingsList
      * for this user node
@@ -64,7 +94,113 @@ public class UserNode {
      * @param rating  rating of the movie
      */
     public void insert(int movieId, double rating) {
+        boolean inSync = seen != null && seenVersion == movieRatings.version();
         movieRatings.insertByRating(movieId, rating);
+        if (inSync) {
+            markSeen(seenIndex.add(movieId));
+            seenVersion = movieRatings.version();
+        }
+    }
+
+    /**
+     * Returns true if this user has rated the given movie. The first call builds a
+     * bitset of the rated movies over the dense indices of the given MovieIndex, so
+     * every check after that takes constant time. Ratings added with insert keep the
+     * bitset up to date; any other change to the ratings makes the next call build it
+     * again. A movie that is not in the index is looked up in the ratings instead.
+     * @param movies dense indices of the movies
+     * @param movieId id of the movie
+     * @return true if the movie is in the user's ratings
+     */
+    boolean hasSeen(MovieIndex movies, int movieId) {
+        long[] bits = seenMovies(movies);
+        int index = movies.get(movieId);
+        if (index < 0) {
+            return movieRatings.getRating(movieId) >= 0;
+        }
+        return (index >>> 6) < bits.length && (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the bitset of rated movies over the dense indices of the given MovieIndex
+     * (see hasSeen), building it if there is none for the index or the ratings changed
+     * since it was built. Bits past the end of the array are not set. Only reads the
+     * index, so it can run while queries read it too; rated movies that are not in the
+     * index have no bit.
+     * @param movies dense indices of the movies
+     * @return bitset of the rated movies, which must not be modified
+     */
+    synchronized long[] seenMovies(MovieIndex movies) {
+        if (seen == null || seenIndex != movies || seenVersion != movieRatings.version()) {
+            seen = new long[(movies.size() + 63) >>> 6];
+            seenIndex = movies;
+            movieRatings.forEachRating((movieId, rating) -> {
+                int index = movies.get(movieId);
+                if (index >= 0) {
+                    markSeen(index);
+                }
+            });
+            seenVersion = movieRatings.version();
+        }
+        return seen;
+    }
+
+    /**
+     * Private helper method that adds a movie to the bitset of rated movies
+     * @param index dense index of the movie
+     */
+    private void markSeen(int index) {
+        if ((index >>> 6) >= seen.length) {
+            seen = Arrays.copyOf(seen, Math.max((index >>> 6) + 1, 2 * seen.length));
+        }
+        seen[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Adds rating info for a given movie to a buffer instead of the MovieRatingsList.
+     * The buffered ratings are added to the list when flush is called.
+     *
+     * @param movieId id of the movie
+     * @param rating  rating of the movie
+     */
+    void buffer(int movieId, double rating) {
+        if (pending == null) {
+            pending = new RatingsBuffer();
+        }
+        pending.add(movieId, rating);
+    }
+
+    /**
+     * Moves the buffered ratings of another node with the same user id to the end of
+     * the buffer of this node
+     * @param other node to take the buffered ratings from
+     */
+    void bufferAll(UserNode other) {
+        if (other.pending == null) {
+            return;
+        }
+        if (pending == null) {
+            pending = other.pending;
+        } else {
+            pending.addAll(other.pending);
+        }
+        other.pending = null;
+    }
+
+    /**
+     * Inserts all buffered ratings into the MovieRatingsList of this user at once, and
+     * adds their movies to the given index
+     * @param movies dense indices of the movies
+     */
+    void flush(MovieIndex movies) {
+        if (pending != null) {
+            int[] movieIds = pending.movieIds();
+            for (int i = 0; i < pending.size(); i++) {
+                movies.add(movieIds[i]);
+            }
+            movieRatings.insertAllByRating(pending.movieIds(), pending.ratings(), pending.size());
+            pending = null;
+        }
     }
 
     /**
@@ -81,10 +217,11 @@ public class UserNode {
 
 
         for (MovieRatingNode x: this.movieRatings) {
-            if (x.getMovieRating() == 5.0 && count < n) {
-                result[count] = x.getMovieId();
-                count++;
+            if (x.getMovieRating() < 5.0 || count >= n) {
+                break; // the list is sorted by rating, so there are no more 5s
             }
+            result[count] = x.getMovieId();
+            count++;
         }
         return result;
     }
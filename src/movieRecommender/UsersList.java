@@ -1,30 +1,56 @@
 package movieRecommender;
 
 
-import com.sun.tools.internal.xjc.reader.xmlschema.bindinfo.BIConversion;
 
 import java.io.*;
 import java.nio.file.Paths;
 import java.nio.file.Path;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A custom linked list that stores user info. Each node in the list is of type
  * UserNode.
  */
 public class UsersList {
+    /** Parallel scans do not split the users into tasks smaller than this */
+    private static final int MIN_USERS_PER_TASK = 64;
+    /** Approximate number of bytes of a UserNode and its MovieRatingsList, without the ratings */
+    private static final int USER_BYTES = 96;
+    /** Number of slots of the index of user ids before it grows */
+    private static final int DEFAULT_INDEX_CAPACITY = 64;
+
+    private static final Metrics.Counter SIMILARITIES = Metrics.counter("similarityComputations");
+    private static final Metrics.Histogram SIMILARITIES_PER_SEARCH = Metrics.histogram("similaritiesPerSearch");
+
     private UserNode head;
     private UserNode tail;
+    private IntTable index; // position of every user in users, by user id
+    private UserNode[] users; // the nodes of the list in the same order, for scans that split the list
+    private int numUsers;
+    private RatingsStore store; // set by compact, null before
+    private MovieUsersIndex movieUsers; // users who rated each movie, built by compact, null before
+    private SimilarityCache similarityCache; // optional cache of similarity scores, null if not used
+    private MovieIndex movieIndex; // dense index of every rated movie, for the seen bitsets of the users
+    private final AtomicLong version = new AtomicLong(); // incremented by every change to the ratings of a user
 
 
     /**
-     * Stores two private data members
+     * Stores three private data members
      * head is a dummy node
      * tail is the last node of the list
+     * index maps user ids to positions in users, so a user can be found without a scan
+     * users holds the same nodes in an array, so the list can be split between threads
      */
     public UsersList() {
         this.head = new UserNode(-1);
         this.tail = head;
+        this.index = new IntTable(DEFAULT_INDEX_CAPACITY);
+        this.users = new UserNode[16];
+        this.movieIndex = new MovieIndex();
     }
 
 
@@ -35,30 +61,90 @@ public class UsersList {
      */
     public void insert(int userId, int movieId, double rating) {
 
-        UserNode user = new UserNode(userId);
+        UserNode user = get(userId);
 
-        if (head.next() == null) {
-            head.setNext(user);
-            user.insert(movieId, rating);
-            tail = user;
+        if (user == null) {
+            user = new UserNode(userId);
+            append(user);
+        }
+        movieIndex.add(movieId);
+        user.insert(movieId, rating);
+        if (movieUsers != null) {
+            movieUsers.add(movieId, user.position);
+        }
+    }
 
-        } else {
+    /**
+     * Inserts the rating for the given userId and given movieId, or changes it with
+     * setRating if the user has already rated the movie
+     * @param userId  id of the user
+     * @param movieId id of the movie
+     * @param rating  rating given by this user to this movie
+     * @return true if the rating is new, false if it replaced an earlier rating
+     */
+    public boolean upsert(int userId, int movieId, double rating) {
 
-            UserNode current = head.next();
+        UserNode user = get(userId);
 
-            while (current != null) {
-                if (current.getId() == userId) {
-                   current.insert(movieId, rating);
-                   return;
-                }
-               current = current.next();
-            }
+        if (user != null && user.hasSeen(movieIndex, movieId)) {
+            user.getMovieRatings().setRating(movieId, rating);
+            return false;
+        }
+        insert(userId, movieId, rating);
+        return true;
+    }
 
-            tail.setNext(user);
-            user.insert(movieId, rating);
-            tail = user;
+    /**
+     * Buffers the rating for the given userId and given movieId. Buffered ratings are
+     * not visible in the user's MovieRatingsList until flushBuffered is called, which
+     * sorts and inserts the ratings of each user in one go. Used for loading large files.
+     * @param userId  id of the user
+     * @param movieId id of the movie
+     * @param rating  rating given by this user to this movie
+     */
+    public void insertBuffered(int userId, int movieId, double rating) {
+
+        UserNode user = get(userId);
+
+        if (user == null) {
+            user = new UserNode(userId);
+            append(user);
         }
+        user.buffer(movieId, rating);
+    }
 
+    /**
+     * Moves the ratings buffered in another UsersList into the buffers of this list.
+     * Users that are not in this list yet are added in the order of the other list,
+     * so merging partial lists in file order gives the same list as buffering the
+     * whole file into one list.
+     * @param other UsersList that holds buffered ratings
+     */
+    void mergeBuffered(UsersList other) {
+
+        UserNode current = other.head.next();
+        while (current != null) {
+            UserNode user = get(current.getId());
+            if (user == null) {
+                user = new UserNode(current.getId());
+                append(user);
+            }
+            user.bufferAll(current);
+            current = current.next();
+        }
+    }
+
+    /**
+     * Inserts the ratings buffered by insertBuffered into the lists of their users,
+     * and adds their movies to the movie index
+     */
+    public void flushBuffered() {
+
+        UserNode current = head.next();
+        while (current != null) {
+            current.flush(movieIndex);
+            current = current.next();
+        }
     }
 
     /**
@@ -74,13 +160,22 @@ public class UsersList {
     }
 
     /**
-     * Appends a new node to the list
+     * Appends a new node to the list, and adds the movies it already rated to the movie index
      * @param newNode a new node to append to the list
      */
     public void append(UserNode newNode) {
 
        tail.setNext(newNode);
        tail = newNode;
+       index.put(newNode.getId(), numUsers);
+
+       if (numUsers == users.length) {
+           users = Arrays.copyOf(users, numUsers * 2);
+       }
+       newNode.position = numUsers;
+       users[numUsers++] = newNode;
+       newNode.getMovieRatings().setModelVersion(version);
+       newNode.getMovieRatings().forEachRating((movieId, rating) -> movieIndex.add(movieId));
 
     }
 
@@ -89,17 +184,166 @@ public class UsersList {
      * @return UserNode for a given userId
      */
     public UserNode get(int userId) {
+        int position = index.get(userId);
+        return position < 0 ? null : users[position];
+    }
 
-        UserNode current = this.head.next();
+    /**
+     * Copies the ratings of all users into one compact RatingsStore and backs the
+     * MovieRatingsList of every user by its range of the store. Meant to be called once
+     * all the data is loaded; users whose ratings change later go back to using nodes.
+     */
+    public void compact() {
 
-        while(current != null) {
+        flushBuffered();
+        store = RatingsStore.build(head, numUsers);
+        UserNode current = head.next();
+        int row = 0;
 
-            if (current.getId() == userId) {
-                return current;
-            }
+        while (current != null) {
+            current.getMovieRatings().attachRow(store, row);
             current = current.next();
+            row++;
+        }
+        indexMovies();
+        movieUsers = MovieUsersIndex.build(users, numUsers);
+    }
+
+    /**
+     * Adds one user per row of the given store, with the given ids, and backs the
+     * MovieRatingsList of each new user by its row. Used to open a ModelSnapshot.
+     * @param userIds ids of the users, one per row of the store
+     * @param ratingsStore compacted ratings of the users
+     */
+    void attachAll(int[] userIds, RatingsStore ratingsStore) {
+
+        for (int row = 0; row < userIds.length; row++) {
+            UserNode user = new UserNode(userIds[row]);
+            append(user);
+            user.getMovieRatings().attachRow(ratingsStore, row);
+        }
+        store = ratingsStore;
+        indexMovies();
+        movieUsers = MovieUsersIndex.build(users, numUsers);
+    }
+
+    /**
+     * Private helper method that adds the movies of the store to the movie index
+     */
+    private void indexMovies() {
+        for (int i = 0; i < store.size(); i++) {
+            movieIndex.add(store.movieId(i));
+        }
+    }
+
+    /**
+     * Returns the dense index of the movies rated by the users of this list
+     * @return index of the movies
+     */
+    MovieIndex movieIndex() {
+        return movieIndex;
+    }
+
+    /**
+     * Returns a number that changes whenever the ratings of any user of the list change,
+     * so results computed from the whole list can tell they are stale
+     * @return version of all ratings of the list
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * Returns the RatingsStore made by the last call to compact, or null
+     * @return compacted ratings of all users
+     */
+    RatingsStore store() {
+        return store;
+    }
+
+    /**
+     * Returns the approximate number of bytes of heap used by the users of the list: their
+     * nodes, the compacted ratings and the indices. Ratings that are back in nodes
+     * (of users changed after compact) are not counted.
+     * @return size in bytes
+     */
+    long sizeInBytes() {
+        long bytes = (long) numUsers * USER_BYTES + 8L * users.length + index.sizeInBytes() + movieIndex.sizeInBytes();
+        if (store != null) {
+            bytes += store.sizeInBytes();
         }
-        return null;
+        if (movieUsers != null) {
+            bytes += movieUsers.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the ids of all users, in the order of the list
+     * @return array of user ids
+     */
+    int[] userIds() {
+
+        int[] result = new int[numUsers];
+        int i = 0;
+        for (UserNode current = head.next(); current != null; current = current.next()) {
+            result[i++] = current.getId();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of users in the list
+     * @return number of users
+     */
+    public int size() {
+        return numUsers;
+    }
+
+    /**
+     * Returns the user at the given position of the list
+     * @param position position of the user, from 0 to size() - 1
+     * @return the node of the user
+     */
+    UserNode userAt(int position) {
+        return users[position];
+    }
+
+    /**
+     * Sets the cache used by the similarity queries of this list. Cached scores are
+     * only returned while the ratings of both users are unchanged, so the results are
+     * the same as without a cache.
+     * @param cache cache of similarity scores, or null to compute every score
+     */
+    public void setSimilarityCache(SimilarityCache cache) {
+        similarityCache = cache;
+    }
+
+    /**
+     * Private helper method that counts the similarities a search computed and reports
+     * the search as a Flight Recorder event
+     * @param scan event begun when the search started
+     * @param userid id of the user
+     * @param count number of users the user was compared with
+     */
+    private static void searched(QueryEvents.SimilarityScan scan, int userid, int count) {
+        SIMILARITIES.add(count);
+        SIMILARITIES_PER_SEARCH.record(count);
+        scan.userId = userid;
+        scan.candidates = count;
+        scan.commit();
+    }
+
+    /**
+     * Private helper method that computes the similarity of two users, through the
+     * similarity cache if one is set
+     * @param user first user
+     * @param other second user
+     * @return similarity score
+     */
+    private double similarity(UserNode user, UserNode other) {
+        SimilarityCache cache = similarityCache;
+        return cache == null ? user.computeSimilarity(other) : cache.similarity(user, other);
     }
 
     /**
@@ -111,6 +355,8 @@ public class UsersList {
      */
     public UserNode findMostSimilarUser(int userid) {
 
+        QueryEvents.SimilarityScan scan = new QueryEvents.SimilarityScan();
+        scan.begin();
         UserNode mostSimilarUser = null;
         UserNode user = this.get(userid);
         UserNode current = head.next();
@@ -123,7 +369,7 @@ public class UsersList {
             if (current.getId() == user.getId()) {
 
             } else {
-                currentScore = user.computeSimilarity(current);
+                currentScore = similarity(user, current);
 
                 if (currentScore > topScore) {
                     topScore = currentScore;
@@ -132,9 +378,235 @@ public class UsersList {
             }
             current = current.next();
         }
+        searched(scan, userid, numUsers - 1);
+
+        return mostSimilarUser;
+
+    }
+
+    /**
+     * Finds the most similar user like findMostSimilarUser, but only computes the
+     * similarity with users who rated at least minOverlap of the same movies. These are
+     * found through the index of the users who rated each movie, built by compact.
+     * Users who share fewer than two movies never have a defined similarity, so with a
+     * minOverlap of 2 or less the result is the same as the one of findMostSimilarUser.
+     * Scans all users if the list has not been compacted.
+     * @param userid id of the user
+     * @param minOverlap minimum number of movies in common
+     * @return the node that corresponds to the most similar user
+     */
+    public UserNode findMostSimilarUser(int userid, int minOverlap) {
+
+        QueryEvents.SimilarityScan scan = new QueryEvents.SimilarityScan();
+        scan.begin();
+        UserNode user = this.get(userid);
+        int[] candidates = candidates(user, minOverlap);
+        if (candidates == null) {
+            return findMostSimilarUser(userid);
+        }
 
+        UserNode mostSimilarUser = null;
+        double topScore = 0;
+
+        for (int position: candidates) {
+            double currentScore = similarity(user, users[position]);
+            if (currentScore > topScore) {
+                topScore = currentScore;
+                mostSimilarUser = users[position];
+            }
+        }
+        searched(scan, userid, candidates.length);
         return mostSimilarUser;
+    }
+
+    /**
+     * Private helper method that returns the positions, from lowest to highest, of the
+     * other users who rated at least minOverlap of the movies of the given user
+     * @param user the user
+     * @param minOverlap minimum number of movies in common
+     * @return positions of the candidates, or null if there is no index of movies to users
+     */
+    private int[] candidates(UserNode user, int minOverlap) {
+        if (movieUsers == null) {
+            return null;
+        }
+        return movieUsers.candidates(user.getMovieRatings(), user.position, numUsers, minOverlap);
+    }
+
+    /**
+     * Computes the similarity between the user with the given userid and all the other
+     * users in a single scan, keeping the k most similar users in a bounded heap.
+     * Only users with a positive similarity are kept. On equal scores, the user that
+     * comes first in the list is preferred, as in findMostSimilarUser.
+     * @param userid id of the user
+     * @param k maximum number of users to return
+     * @param scores array of length at least k that receives the similarity of each
+     *               returned user, or null
+     * @return up to k most similar users, from most to least similar
+     */
+    public UserNode[] findMostSimilarUsers(int userid, int k, double[] scores) {
+        return findMostSimilarUsers(userid, k, scores, 0);
+    }
+
+    /**
+     * Finds the k most similar users like findMostSimilarUsers, but only computes the
+     * similarity with users who rated at least minOverlap of the same movies
+     * (see findMostSimilarUser(int, int)).
+     * @param userid id of the user
+     * @param k maximum number of users to return
+     * @param scores array of length at least k that receives the similarity of each
+     *               returned user, or null
+     * @param minOverlap minimum number of movies in common
+     * @return up to k most similar users, from most to least similar
+     */
+    public UserNode[] findMostSimilarUsers(int userid, int k, double[] scores, int minOverlap) {
+
+        QueryEvents.SimilarityScan scan = new QueryEvents.SimilarityScan();
+        scan.begin();
+        UserNode user = this.get(userid);
+        TopKHeap heap = new TopKHeap(k);
+        int[] candidates = minOverlap > 0 ? candidates(user, minOverlap) : null;
+        int count = candidates == null ? numUsers : candidates.length;
+
+        for (int i = 0; i < count; i++) {
+            int position = candidates == null ? i : candidates[i];
+            UserNode current = users[position];
+            if (current.getId() != user.getId()) {
+                double score = similarity(user, current);
+                if (score > 0) {
+                    heap.offer(position, score);
+                }
+            }
+        }
+
+        searched(scan, userid, candidates == null ? numUsers - 1 : count);
+        int[] positions = heap.drain(scores);
+        UserNode[] result = new UserNode[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            result[i] = users[positions[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Finds the most similar user like findMostSimilarUser, but splits the other users
+     * between the threads of the given pool and computes their similarities in parallel.
+     * Ties are broken the same way (the user that comes first in the list wins), so the
+     * result is always the same as the one of findMostSimilarUser.
+     * @param userid id of the user
+     * @param pool pool of threads to use
+     * @return the node that corresponds to the most similar user
+     */
+    public UserNode findMostSimilarUser(int userid, ForkJoinPool pool) {
+        return findMostSimilarUser(userid, 0, pool);
+    }
+
+    /**
+     * Finds the most similar user in parallel like findMostSimilarUser(int, ForkJoinPool),
+     * but only among the users who rated at least minOverlap of the same movies
+     * (see findMostSimilarUser(int, int)).
+     * @param userid id of the user
+     * @param minOverlap minimum number of movies in common
+     * @param pool pool of threads to use
+     * @return the node that corresponds to the most similar user
+     */
+    public UserNode findMostSimilarUser(int userid, int minOverlap, ForkJoinPool pool) {
 
+        QueryEvents.SimilarityScan scan = new QueryEvents.SimilarityScan();
+        scan.begin();
+        UserNode user = this.get(userid);
+        int[] candidates = minOverlap > 0 ? candidates(user, minOverlap) : null;
+        int count = candidates == null ? numUsers : candidates.length;
+        int threshold = Math.max(MIN_USERS_PER_TASK, count / (4 * pool.getParallelism()));
+        Match best = pool.invoke(new SimilarityTask(user, candidates, 0, count, threshold));
+        searched(scan, userid, candidates == null ? numUsers - 1 : count);
+        return best.index < 0 ? null : users[best.index];
+    }
+
+    /**
+     * The most similar user found in a part of the list and its similarity score
+     */
+    private static final class Match {
+        final int index; // position of the user in the users array, -1 if none
+        final double score;
+
+        /**
+         * Creates a match
+         * @param index position of the user in the users array, -1 if none
+         * @param score similarity score of the user
+         */
+        Match(int index, double score) {
+            this.index = index;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Inner class: SimilarityTask
+     * Finds the most similar user among the users between two positions of the users array
+     * (or of an array of candidate positions), splitting the range into two halves that run
+     * in parallel while it is large.
+     */
+    private class SimilarityTask extends RecursiveTask<Match> {
+        private static final long serialVersionUID = 1L;
+
+        private final UserNode user;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        /**
+         * Creates a task for a range of users
+         * @param user user to compare the others with
+         * @param candidates positions of the users to compare with, sorted, or null for all users
+         * @param from first position, inclusive
+         * @param to last position, exclusive
+         * @param threshold ranges with at most this many users are not split
+         */
+        SimilarityTask(UserNode user, int[] candidates, int from, int to, int threshold) {
+            this.user = user;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Scans the range, or splits it and keeps the better of the two halves.
+         * On equal scores the left half wins, as in the sequential scan.
+         * @return best match in the range
+         */
+        @Override
+        protected Match compute() {
+
+            if (to - from <= threshold) {
+                int bestIndex = -1;
+                double topScore = 0;
+
+                for (int i = from; i < to; i++) {
+                    int position = candidates == null ? i : candidates[i];
+                    UserNode current = users[position];
+                    if (current.getId() != user.getId()) {
+                        double currentScore = similarity(user, current);
+                        if (currentScore > topScore) {
+                            topScore = currentScore;
+                            bestIndex = position;
+                        }
+                    }
+                }
+                return new Match(bestIndex, topScore);
+            }
+
+            int middle = (from + to) >>> 1;
+            SimilarityTask left = new SimilarityTask(user, candidates, from, middle, threshold);
+            SimilarityTask right = new SimilarityTask(user, candidates, middle, to, threshold);
+            right.fork();
+            Match leftMatch = left.compute();
+            Match rightMatch = right.join();
+
+            return rightMatch.score > leftMatch.score ? rightMatch : leftMatch;
+        }
     }
 
     /** Print UsersList to a file  with the given name in the following format:
@@ -0,0 +1,110 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Test file for findBatchRecommendations.
+ *  The combined file must hold the same titles as findRecommendations and
+ *  findAntiRecommendations print for each user, whatever the number of threads.
+ *  */
+public class BatchRecommendationsTest {
+
+    @Test
+    public void testSameAsSingleQueries() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+        recommender.setResultCacheSize(0);
+
+        int[] userIds = new int[100];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = 1 + (i * 37) % 671;
+        }
+
+        Path single = Files.createTempFile("single", ".txt");
+        List<String> expected = new ArrayList<>();
+        try {
+            for (int userId: userIds) {
+                recommender.findRecommendations(userId, 8, single.toString());
+                for (String title: Files.readAllLines(single, StandardCharsets.UTF_8)) {
+                    expected.add(userId + "\trecommend\t" + title);
+                }
+                recommender.findAntiRecommendations(userId, 8, single.toString());
+                for (String title: Files.readAllLines(single, StandardCharsets.UTF_8)) {
+                    expected.add(userId + "\tavoid\t" + title);
+                }
+            }
+        } finally {
+            Files.delete(single);
+        }
+
+        Path batch = Files.createTempFile("batch", ".txt");
+        try {
+            int[] threadCounts = {1, 4};
+            for (int threads: threadCounts) {
+                recommender.findBatchRecommendations(userIds, 8, batch.toString(), threads);
+                Assert.assertEquals("Batch with " + threads + " threads",
+                        expected, Files.readAllLines(batch, StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.delete(batch);
+        }
+    }
+
+    @Test
+    public void testUnknownUsersSkipped() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Path batch = Files.createTempFile("batch", ".txt");
+        try {
+            recommender.findBatchRecommendations(new int[] {100000, 3}, 5, batch.toString(), 2);
+            List<String> lines = Files.readAllLines(batch, StandardCharsets.UTF_8);
+            Assert.assertFalse(lines.isEmpty());
+            for (String line: lines) {
+                Assert.assertTrue(line.startsWith("3\t"));
+            }
+        } finally {
+            Files.delete(batch);
+        }
+    }
+
+    @Test
+    public void testMissingTitlesSkipped() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        Path single = dir.resolve("single");
+        Path batch = dir.resolve("batch");
+        try {
+            // movie 2, which user 1 would be recommended, has no title
+            Files.write(movies, Arrays.asList("movieId,title,genres",
+                    "1,One,Drama", "3,Three,Drama", "4,Four,Drama", "5,Five,Drama"));
+            Files.write(ratings, Arrays.asList("userId,movieId,rating,timestamp",
+                    "1,3,5.0,0", "1,4,1.0,0", "1,5,3.0,0",
+                    "2,1,5.0,0", "2,2,5.0,0", "2,3,5.0,0", "2,4,1.0,0", "2,5,3.0,0"));
+
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData(movies.toString(), ratings.toString());
+            recommender.findRecommendations(1, 3, single.toString());
+            Assert.assertEquals(Collections.singletonList("One"), Files.readAllLines(single));
+
+            recommender.findBatchRecommendations(new int[] {1}, 3, batch.toString(), 1);
+            Assert.assertEquals(Collections.singletonList("1\trecommend\tOne"),
+                    Files.readAllLines(batch, StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(batch);
+            Files.deleteIfExists(single);
+            Files.deleteIfExists(ratings);
+            Files.deleteIfExists(movies);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import movieRecommender.MovieRatingNode;
+import movieRecommender.MovieRatingsList;
+import movieRecommender.UserNode;
+import movieRecommender.UsersList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+/** Test file for a UsersList after its ratings were compacted into a RatingsStore.
+ *  Checks that the compacted lists give the same answers as the linked lists.
+ *  */
+public class CompactUsersListTest {
+
+    @Test
+    public void testPrintAfterCompact() {
+        UsersList users = initializeUsers();
+        users.compact();
+
+        Path actual = Paths.get("test" + File.separator + "usersDataSimple");
+        users.print(actual.toString());
+        Path expected = Paths.get("test" + File.separator + "expectedUsersDataSimple");
+
+        int count = 0;
+        try {
+            count = TestUtils.checkFiles(expected, actual);
+        } catch (IOException e) {
+            Assert.fail(" File check failed: " + e.getMessage());
+        }
+        if (count <= 0)
+            Assert.fail(" File check failed, files are different" );
+    }
+
+    @Test
+    public void testReadsAfterCompact() {
+        UsersList users = initializeUsers();
+        users.compact();
+        MovieRatingsList list = users.get(1).getMovieRatings();
+
+        Assert.assertEquals(7, list.size());
+        Assert.assertEquals(2.0, list.getRating(3), 0.001);
+        Assert.assertEquals(-1, list.getRating(42), 0.001);
+        Assert.assertEquals(4.0, list.getMedianRating(), 0.001);
+
+        // After insertions: 4, 2, 1, 7, 5, 6, 3
+        Iterator<MovieRatingNode> best = list.getNBestRankedMovies(2).iterator();
+        Assert.assertEquals(4, best.next().getMovieId());
+        Assert.assertEquals(2, best.next().getMovieId());
+        Assert.assertFalse(best.hasNext());
+
+        Iterator<MovieRatingNode> worst = list.getNWorstRankedMovies(2).iterator();
+        Assert.assertEquals(6, worst.next().getMovieId());
+        Assert.assertEquals(3, worst.next().getMovieId());
+        Assert.assertFalse(worst.hasNext());
+
+        Assert.assertEquals(4, MovieRatingsListTest.numNodes(list.sublist(2, 4)));
+    }
+
+    @Test
+    public void testChangesAfterCompact() {
+        UsersList users = initializeUsers();
+        users.compact();
+        MovieRatingsList list = users.get(1).getMovieRatings();
+
+        list.setRating(1, 2.0);
+        list.setRating(6, 5.0);
+        list.insertByRating(8, 3.5);
+
+        Assert.assertEquals(8, MovieRatingsListTest.numNodes(list));
+        Assert.assertTrue(MovieRatingsListTest.isSortedDescending(list));
+        Assert.assertEquals(5.0, list.getRating(6), 0.001);
+
+        // other users still read from the store
+        Assert.assertEquals(3, users.get(2).getMovieRatings().size());
+    }
+
+    @Test
+    public void testSimilarityAfterCompact() {
+        UsersList users = initializeUsers();
+        double before = users.get(1).computeSimilarity(users.get(3));
+        users.compact();
+        double after = users.get(1).computeSimilarity(users.get(3));
+        Assert.assertEquals(before, after, 0.0001);
+    }
+
+    @Test
+    public void testRatingStats() {
+        UsersList users = initializeUsers();
+        UserNode user = users.get(1);
+        // ratings 5, 5, 2, 5, 4, 3, 4
+        Assert.assertEquals(7, user.getRatingCount());
+        Assert.assertEquals(28.0 / 7, user.getMeanRating(), 0.0001);
+        Assert.assertEquals(Math.sqrt(120), user.getRatingNorm(), 0.0001);
+
+        users.compact();
+        Assert.assertEquals(28.0 / 7, user.getMeanRating(), 0.0001);
+
+        user.getMovieRatings().setRating(3, 5.0);
+        users.insert(1, 9, 1.0);
+        // ratings 5, 5, 5, 5, 4, 3, 4, 1
+        Assert.assertEquals(8, user.getRatingCount());
+        Assert.assertEquals(32.0 / 8, user.getMeanRating(), 0.0001);
+        Assert.assertEquals(Math.sqrt(142), user.getRatingNorm(), 0.0001);
+    }
+
+    /**
+     * Creates the users list used in UsersListTest
+     * @return UsersList with three users
+     */
+    private UsersList initializeUsers() {
+        UsersList users = new UsersList();
+        addData(users, 1, UsersListTest.MOVIES1, UsersListTest.RATINGS1);
+        addData(users, 2, UsersListTest.MOVIES2, UsersListTest.RATINGS2);
+        addData(users, 3, UsersListTest.MOVIES3, UsersListTest.RATINGS3);
+        return users;
+    }
+
+    /**
+     * Insert a given data for a given user id into the usersList
+     * @param users
+     * @param userId
+     * @param movies
+     * @param ratings
+     */
+    private void addData(UsersList users, int userId, int[] movies, double[] ratings) {
+        for (int i = 0; i < movies.length; i++) {
+            users.insert(userId, movies[i], ratings[i]);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import movieRecommender.MovieRatingNode;
+import movieRecommender.MovieRatingsList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/** Test file for MovieRatingsList.computeSimilarity on lists of very different sizes.
+ *  Compares the result with a straightforward computation of Pearson's correlation.
+ *  */
+public class ComputeSimilarityTest {
+
+    @Test
+    public void testSimilarSizes() {
+        Random random = new Random(545);
+        for (int i = 0; i < 50; i++) {
+            MovieRatingsList list1 = randomList(random, 40, 100);
+            MovieRatingsList list2 = randomList(random, 60, 100);
+            checkSimilarity(list1, list2);
+        }
+    }
+
+    @Test
+    public void testVeryDifferentSizes() {
+        Random random = new Random(545);
+        for (int i = 0; i < 50; i++) {
+            MovieRatingsList small = randomList(random, 5, 2000);
+            MovieRatingsList large = randomList(random, 1200, 2000);
+            checkSimilarity(small, large);
+            checkSimilarity(large, small);
+        }
+    }
+
+    @Test
+    public void testNoMoviesInCommon() {
+        MovieRatingsList list1 = new MovieRatingsList();
+        list1.insertByRating(1, 5);
+        list1.insertByRating(2, 3);
+        MovieRatingsList list2 = new MovieRatingsList();
+        list2.insertByRating(3, 4);
+        Assert.assertTrue(Double.isNaN(list1.computeSimilarity(list2)));
+        Assert.assertTrue(Double.isNaN(list1.computeSimilarity(new MovieRatingsList())));
+    }
+
+    @Test
+    public void testAfterSetRating() {
+        Random random = new Random(7);
+        MovieRatingsList list1 = randomList(random, 30, 50);
+        MovieRatingsList list2 = randomList(random, 30, 50);
+        checkSimilarity(list1, list2);
+
+        for (MovieRatingNode x: list2.getNBestRankedMovies(5)) {
+            list2.setRating(x.getMovieId(), 1.0);
+        }
+        checkSimilarity(list1, list2);
+    }
+
+    /**
+     * Fails the test if computeSimilarity does not match the straightforward computation
+     * @param list1 first list
+     * @param list2 second list
+     */
+    private void checkSimilarity(MovieRatingsList list1, MovieRatingsList list2) {
+        double expected = pearson(list1, list2);
+        double actual = list1.computeSimilarity(list2);
+        if (Double.isNaN(expected)) {
+            Assert.assertTrue(Double.isNaN(actual));
+        } else {
+            Assert.assertEquals(expected, actual, 1e-9);
+        }
+    }
+
+    /**
+     * Computes Pearson's correlation between the two lists using a HashMap
+     * @param list1 first list
+     * @param list2 second list
+     * @return similarity
+     */
+    private double pearson(MovieRatingsList list1, MovieRatingsList list2) {
+        HashMap<Integer, Double> ratings = new HashMap<>();
+        for (MovieRatingNode x: list1) {
+            ratings.put(x.getMovieId(), x.getMovieRating());
+        }
+        int n = 0;
+        double sumX = 0, sumY = 0, sumX2 = 0, sumY2 = 0, sumXY = 0;
+        for (MovieRatingNode y: list2) {
+            Double x = ratings.get(y.getMovieId());
+            if (x != null) {
+                n++;
+                sumX += x;
+                sumY += y.getMovieRating();
+                sumXY += x * y.getMovieRating();
+                sumX2 += x * x;
+                sumY2 += y.getMovieRating() * y.getMovieRating();
+            }
+        }
+        return ((n * sumXY) - (sumX * sumY))
+                / (Math.sqrt((n * sumX2) - (sumX * sumX)) * Math.sqrt((n * sumY2) - (sumY * sumY)));
+    }
+
+    /**
+     * Creates a list with the given number of random ratings of distinct movies
+     * @param random random number generator
+     * @param size number of ratings
+     * @param numMovies movie ids are chosen between 1 and numMovies
+     * @return new MovieRatingsList
+     */
+    private MovieRatingsList randomList(Random random, int size, int numMovies) {
+        MovieRatingsList list = new MovieRatingsList();
+        boolean[] used = new boolean[numMovies + 1];
+        int count = 0;
+        while (count < size) {
+            int movieId = 1 + random.nextInt(numMovies);
+            if (!used[movieId]) {
+                used[movieId] = true;
+                list.insertByRating(movieId, 0.5 * (1 + random.nextInt(10)));
+                count++;
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,113 @@
+import movieRecommender.DatasetGenerator;
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Test file for the synthetic dataset generator.
+ *  Checks that the files are reproducible, have the requested size and
+ *  can be loaded by the MovieRecommender.
+ *  */
+public class DatasetGeneratorTest {
+
+    @Test
+    public void testSameSeedSameFiles() throws IOException {
+        Path first = Files.createTempDirectory("generated");
+        Path second = Files.createTempDirectory("generated");
+        Path other = Files.createTempDirectory("generated");
+        try {
+            DatasetGenerator.generate(first.toString(), 20000, 100, 500, 7);
+            DatasetGenerator.generate(second.toString(), 20000, 100, 500, 7);
+            DatasetGenerator.generate(other.toString(), 20000, 100, 500, 8);
+
+            Assert.assertTrue(Arrays.equals(Files.readAllBytes(first.resolve("ratings.csv")),
+                    Files.readAllBytes(second.resolve("ratings.csv"))));
+            Assert.assertTrue(Arrays.equals(Files.readAllBytes(first.resolve("movies.csv")),
+                    Files.readAllBytes(second.resolve("movies.csv"))));
+            Assert.assertFalse(Arrays.equals(Files.readAllBytes(first.resolve("ratings.csv")),
+                    Files.readAllBytes(other.resolve("ratings.csv"))));
+        } finally {
+            delete(first);
+            delete(second);
+            delete(other);
+        }
+    }
+
+    @Test
+    public void testRatings() throws IOException {
+        Path dir = Files.createTempDirectory("generated");
+        try {
+            DatasetGenerator.generate(dir.toString(), 20000, 100, 500, 7);
+
+            List<String> lines = Files.readAllLines(dir.resolve("ratings.csv"));
+            Assert.assertEquals("userId,movieId,rating,timestamp", lines.get(0));
+            Assert.assertEquals(20001, lines.size());
+
+            Set<String> pairs = new HashSet<>();
+            int[] counts = new int[101];
+            for (String line: lines.subList(1, lines.size())) {
+                String[] info = line.split(",");
+                int userId = Integer.parseInt(info[0]);
+                int movieId = Integer.parseInt(info[1]);
+                double rating = Double.parseDouble(info[2]);
+                Assert.assertTrue(movieId >= 1 && movieId <= 500);
+                Assert.assertTrue(rating >= 0.5 && rating <= 5.0);
+                Assert.assertEquals(0.0, rating * 2 - Math.floor(rating * 2), 0.0);
+                Assert.assertTrue("duplicate rating " + line, pairs.add(userId + "," + movieId));
+                counts[userId]++;
+            }
+            // every user rates at least 20 movies and at most half of them
+            for (int userId = 1; userId <= 100; userId++) {
+                Assert.assertTrue(counts[userId] >= 20 && counts[userId] <= 250);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        Path dir = Files.createTempDirectory("generated");
+        Path output = dir.resolve("recommendations");
+        try {
+            DatasetGenerator.generate(dir.toString(), 20000, 100, 500, 7);
+
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData(dir.resolve("movies.csv").toString(), dir.resolve("ratings.csv").toString());
+            Assert.assertEquals(100, recommender.getUserIds().length);
+
+            recommender.findRecommendations(1, 5, output.toString());
+            for (String title: Files.readAllLines(output)) {
+                Assert.assertTrue(title.startsWith("Movie "));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testParseCount() {
+        Assert.assertEquals(100000, DatasetGenerator.parseCount("100000"));
+        Assert.assertEquals(100000, DatasetGenerator.parseCount("100K"));
+        Assert.assertEquals(25000000, DatasetGenerator.parseCount("25M"));
+    }
+
+    /**
+     * Deletes a directory and the files in it
+     * @param dir directory to delete
+     * @throws IOException if a file can not be deleted
+     */
+    private static void delete(Path dir) throws IOException {
+        for (String name: new String[] {"movies.csv", "ratings.csv", "recommendations"}) {
+            Files.deleteIfExists(dir.resolve(name));
+        }
+        Files.delete(dir);
+    }
+}
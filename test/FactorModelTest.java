@@ -0,0 +1,64 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/** Test file for the recommendations of the latent factor model.
+ *  */
+public class FactorModelTest {
+
+    @Test
+    public void testFactorRecommend() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Path first = Files.createTempFile("factors1", ".txt");
+        Path second = Files.createTempFile("factors2", ".txt");
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            // nothing to recommend before training
+            recommender.findFactorRecommendations(3, 10, first.toString());
+            Assert.assertTrue(Files.readAllLines(first).isEmpty());
+
+            // with one thread, training is the same every time
+            recommender.setSimilarityPool(pool);
+            recommender.trainFactorModel(16, 10);
+            recommender.findFactorRecommendations(3, 10, first.toString());
+            recommender.trainFactorModel(16, 10);
+            recommender.findFactorRecommendations(3, 10, second.toString());
+
+            List<String> titles = Files.readAllLines(first);
+            Assert.assertEquals(10, titles.size());
+            Assert.assertEquals(10, new HashSet<>(titles).size());
+            Assert.assertEquals(titles, Files.readAllLines(second));
+        } finally {
+            pool.shutdown();
+            Files.delete(first);
+            Files.delete(second);
+        }
+    }
+
+    @Test
+    public void testParallelTraining() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Path file = Files.createTempFile("factors", ".txt");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            recommender.setSimilarityPool(pool);
+            recommender.trainFactorModel(16, 10);
+            recommender.findFactorRecommendations(15, 5, file.toString());
+            Assert.assertEquals(5, Files.readAllLines(file).size());
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+}
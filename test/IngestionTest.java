@@ -0,0 +1,183 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Test file for adding ratings to the loaded data, through addRatings or by
+ *  following the ratings file. Queries must see the new ratings without a reload,
+ *  and give the same results as loading all the ratings at once.
+ *  */
+public class IngestionTest {
+    private static final List<String> MOVIES = Arrays.asList("movieId,title,genres",
+            "1,One,Drama", "2,Two,Drama", "3,Three,Drama", "4,Four,Drama", "5,Five,Drama");
+    // user 2 is the most similar user of user 1 and gave 5 to movies 1, 2 and 3
+    private static final List<String> RATINGS = Arrays.asList("userId,movieId,rating,timestamp",
+            "1,3,5.0,0", "1,4,1.0,0", "1,5,3.0,0",
+            "2,1,5.0,0", "2,2,5.0,0", "2,3,5.0,0", "2,4,1.0,0", "2,5,3.0,0");
+
+    @Test
+    public void testAddRatings() throws IOException {
+        Path dir = Files.createTempDirectory("ingest");
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        Path output = dir.resolve("recommendations");
+        try {
+            Files.write(movies, MOVIES);
+            Files.write(ratings, RATINGS);
+
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData(movies.toString(), ratings.toString());
+            recommender.findRecommendations(1, 3, output.toString());
+            Assert.assertEquals(Arrays.asList("Two", "One"), Files.readAllLines(output));
+
+            // user 1 sees movie 1, so it is no longer recommended
+            int added = recommender.addRatings(new int[] {1}, new int[] {1}, new double[] {4.0});
+            Assert.assertEquals(1, added);
+            recommender.findRecommendations(1, 3, output.toString());
+            Assert.assertEquals(Collections.singletonList("Two"), Files.readAllLines(output));
+
+            // a new user, and a changed rating that makes movie 2 one to avoid
+            added = recommender.addRatings(new int[] {3, 2}, new int[] {1, 2}, new double[] {2.0, 1.0});
+            Assert.assertEquals(1, added);
+            Assert.assertArrayEquals(new int[] {1, 2, 3}, recommender.getUserIds());
+            recommender.findRecommendations(1, 3, output.toString());
+            Assert.assertTrue(Files.readAllLines(output).isEmpty());
+            recommender.findAntiRecommendations(1, 3, output.toString());
+            Assert.assertEquals(Collections.singletonList("Two"), Files.readAllLines(output));
+        } finally {
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(ratings);
+            Files.deleteIfExists(movies);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSameAsLoaded() throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get("ratings.csv"));
+        int half = lines.size() / 2;
+        Path first = Files.createTempFile("ratings", ".csv");
+        Path expected = Files.createTempFile("expected", ".txt");
+        Path actual = Files.createTempFile("actual", ".txt");
+        try {
+            Files.write(first, lines.subList(0, half));
+
+            MovieRecommender loaded = new MovieRecommender();
+            loaded.loadData("movies.csv", "ratings.csv");
+            MovieRecommender ingested = new MovieRecommender();
+            ingested.loadData("movies.csv", first.toString());
+            ingested.buildLshIndex(1, 1, 1); // every user is a candidate, so results stay exact
+
+            int count = lines.size() - half;
+            int[] userIds = new int[count];
+            int[] movieIds = new int[count];
+            double[] ratings = new double[count];
+            for (int i = 0; i < count; i++) {
+                String[] fields = lines.get(half + i).split(",");
+                userIds[i] = Integer.parseInt(fields[0]);
+                movieIds[i] = Integer.parseInt(fields[1]);
+                ratings[i] = Double.parseDouble(fields[2]);
+            }
+            ingested.addRatings(userIds, movieIds, ratings);
+            Assert.assertEquals(loaded.getUserIds().length, ingested.getUserIds().length);
+
+            for (int userid: new int[] {1, 15, 350, 671}) {
+                loaded.findRecommendations(userid, 10, expected.toString());
+                ingested.findRecommendations(userid, 10, actual.toString());
+                Assert.assertEquals("user " + userid, Files.readAllLines(expected), Files.readAllLines(actual));
+            }
+        } finally {
+            Files.delete(first);
+            Files.delete(expected);
+            Files.delete(actual);
+        }
+    }
+
+    @Test
+    public void testFollowRatings() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("follow");
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        Path output = dir.resolve("recommendations");
+        MovieRecommender recommender = new MovieRecommender();
+        try {
+            Files.write(movies, MOVIES);
+            Files.write(ratings, RATINGS);
+            recommender.loadData(movies.toString(), ratings.toString());
+            recommender.followRatings(ratings.toString(), 5);
+
+            // the second line is not complete until its newline is written
+            Files.write(ratings, "1,1,4.0,0\n1,2".getBytes(), StandardOpenOption.APPEND);
+            Assert.assertEquals(Collections.singletonList("Two"), waitForRecommendations(recommender, output, 1));
+
+            Files.write(ratings, ",4.0,0\n".getBytes(), StandardOpenOption.APPEND);
+            Assert.assertEquals(Collections.emptyList(), waitForRecommendations(recommender, output, 0));
+        } finally {
+            recommender.stopFollowingRatings();
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(ratings);
+            Files.deleteIfExists(movies);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testMalformedLineSkipped() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("follow");
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        Path output = dir.resolve("recommendations");
+        MovieRecommender recommender = new MovieRecommender();
+        try {
+            Files.write(movies, MOVIES);
+            Files.write(ratings, RATINGS);
+            recommender.loadData(movies.toString(), ratings.toString());
+            recommender.followRatings(ratings.toString(), 5);
+
+            // the bad line is skipped, the good line after it is still read
+            Files.write(ratings, "1,one,4.0,0\n1,1,4.0,0\n".getBytes(), StandardOpenOption.APPEND);
+            Assert.assertEquals(Collections.singletonList("Two"), waitForRecommendations(recommender, output, 1));
+
+            // and following goes on with the lines appended later
+            Files.write(ratings, "1,2,4.0,0\n".getBytes(), StandardOpenOption.APPEND);
+            Assert.assertEquals(Collections.emptyList(), waitForRecommendations(recommender, output, 0));
+        } finally {
+            recommender.stopFollowingRatings();
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(ratings);
+            Files.deleteIfExists(movies);
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Asks for the recommendations of user 1 until there are the given number of them,
+     * or a few seconds passed
+     * @param recommender recommender that follows the ratings file
+     * @param output file to print the recommendations to
+     * @param count number of recommendations to wait for
+     * @return the last recommendations printed
+     * @throws IOException if the output file can not be read
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private List<String> waitForRecommendations(MovieRecommender recommender, Path output, int count)
+            throws IOException, InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        List<String> lines;
+        do {
+            Thread.sleep(5);
+            recommender.findRecommendations(1, 3, output.toString());
+            lines = Files.readAllLines(output);
+        } while (lines.size() != count && System.currentTimeMillis() < deadline);
+        return lines;
+    }
+}
@@ -0,0 +1,77 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/** Test file for the item-based recommender.
+ *  */
+public class ItemRecommendationsTest {
+
+    @Test
+    public void testSimilarMovies() throws IOException {
+        Path dir = Files.createTempDirectory("items");
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        Path output = dir.resolve("recommendations");
+        try {
+            Files.write(movies, Arrays.asList("movieId,title,genres",
+                    "1,One,Drama", "2,Two,Drama", "3,Three,Drama", "4,Four,Drama"));
+            // users 2 and 3 rate movie 2 like movie 1, and movie 4 the other way around
+            Files.write(ratings, Arrays.asList("userId,movieId,rating,timestamp",
+                    "1,1,5.0,0", "1,3,1.0,0",
+                    "2,1,5.0,0", "2,2,5.0,0", "2,3,1.0,0", "2,4,1.0,0",
+                    "3,1,1.0,0", "3,2,1.0,0", "3,3,4.0,0", "3,4,5.0,0"));
+
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData(movies.toString(), ratings.toString());
+            // nothing is recommended until the model is computed
+            recommender.findItemRecommendations(1, 2, output.toString());
+            Assert.assertTrue(Files.readAllLines(output).isEmpty());
+
+            recommender.computeItemNeighbors(50);
+            recommender.findItemRecommendations(1, 2, output.toString());
+
+            List<String> lines = Files.readAllLines(output);
+            Assert.assertEquals(Arrays.asList("Two", "Four"), lines);
+        } finally {
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(ratings);
+            Files.deleteIfExists(movies);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSameWithAnyThreads() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Path expected = Files.createTempFile("items1", ".txt");
+        Path actual = Files.createTempFile("items4", ".txt");
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            recommender.setSimilarityPool(single);
+            recommender.computeItemNeighbors(30);
+            recommender.findItemRecommendations(3, 10, expected.toString());
+            List<String> titles = Files.readAllLines(expected);
+            Assert.assertEquals(10, titles.size());
+
+            recommender.setSimilarityPool(pool);
+            recommender.computeItemNeighbors(30);
+            recommender.findItemRecommendations(3, 10, actual.toString());
+            Assert.assertEquals(titles, Files.readAllLines(actual));
+        } finally {
+            single.shutdown();
+            pool.shutdown();
+            Files.delete(expected);
+            Files.delete(actual);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/** Test file for the approximate search of similar users with an LSH index.
+ *  */
+public class LshIndexTest {
+
+    @Test
+    public void testAllCandidates() throws IOException {
+        MovieRecommender exact = new MovieRecommender();
+        exact.loadData("movies.csv", "ratings.csv");
+        MovieRecommender approximate = new MovieRecommender();
+        approximate.loadData("movies.csv", "ratings.csv");
+
+        // with one bit and one probe, both buckets are read, so every user is a candidate
+        approximate.buildLshIndex(1, 1, 1);
+        int[] userIds = approximate.getUserIds();
+        Assert.assertEquals(1.0, approximate.measureLshRecall(userIds), 0.0);
+
+        Path expected = Files.createTempFile("exact", ".txt");
+        Path actual = Files.createTempFile("lsh", ".txt");
+        try {
+            exact.findRecommendations(3, 5, expected.toString());
+            approximate.findRecommendations(3, 5, actual.toString());
+            Assert.assertEquals(Files.readAllLines(expected), Files.readAllLines(actual));
+        } finally {
+            Files.delete(expected);
+            Files.delete(actual);
+        }
+    }
+
+    @Test
+    public void testTradeoff() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+        int[] userIds = recommender.getUserIds();
+        Assert.assertTrue(Double.isNaN(recommender.measureLshRecall(userIds)));
+
+        recommender.buildLshIndex(4, 8, 0);
+        double few = recommender.measureLshRecall(userIds);
+        recommender.buildLshIndex(4, 8, 0);
+        Assert.assertEquals(few, recommender.measureLshRecall(userIds), 0.0);
+
+        recommender.buildLshIndex(16, 4, 2);
+        double many = recommender.measureLshRecall(userIds);
+        Assert.assertTrue(many > few);
+
+        Path file = Files.createTempFile("lsh", ".txt");
+        try {
+            recommender.findAntiRecommendations(3, 5, file.toString());
+            List<String> titles = Files.readAllLines(file);
+            Assert.assertTrue(titles.size() <= 5);
+        } finally {
+            Files.delete(file);
+        }
+        recommender.clearLshIndex();
+        Assert.assertTrue(Double.isNaN(recommender.measureLshRecall(userIds)));
+    }
+}
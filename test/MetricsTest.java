@@ -0,0 +1,92 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Test file for the metrics the recommender publishes over JMX.
+ *  Reads them through the platform MBean server, the way a monitoring tool does.
+ *  */
+public class MetricsTest {
+    private static final String OBJECT_NAME = "movieRecommender:type=Metrics";
+
+    @Test
+    public void testLoadMetrics() throws Exception {
+        MovieRecommender recommender = new MovieRecommender();
+        long ratingsBefore = (Long) attribute("ratingsLoaded");
+        long loadsBefore = (Long) attribute("loadDataNanos.count");
+
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Assert.assertEquals(100004, (Long) attribute("ratingsLoaded") - ratingsBefore);
+        Assert.assertEquals(1, (Long) attribute("loadDataNanos.count") - loadsBefore);
+        Assert.assertEquals(671L, attribute("users"));
+        Assert.assertEquals(100004L, attribute("ratings"));
+        Assert.assertTrue((Long) attribute("ratingsLoadedPerSecond") > 0);
+        Assert.assertTrue((Long) attribute("modelBytes") > 100004L * 8);
+    }
+
+    @Test
+    public void testQueryMetrics() throws Exception {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+        recommender.setResultCacheSize(0);
+        long queriesBefore = (Long) attribute("recommendationsNanos.count");
+        long searchesBefore = (Long) attribute("similarUserSearchNanos.count");
+        long similaritiesBefore = (Long) attribute("similarityComputations");
+
+        String output = "test" + File.separator + "metricsRecommendations";
+        recommender.findRecommendations(3, 5, output);
+        recommender.findAntiRecommendations(3, 5, output);
+        new File(output).delete();
+
+        Assert.assertEquals(2, (Long) attribute("recommendationsNanos.count") - queriesBefore);
+        Assert.assertEquals(2, (Long) attribute("similarUserSearchNanos.count") - searchesBefore);
+        // a search compares the user with at most the 670 other users
+        long similarities = (Long) attribute("similarityComputations") - similaritiesBefore;
+        Assert.assertTrue(similarities > 0 && similarities <= 2 * 670);
+        Assert.assertTrue((Long) attribute("similaritiesPerSearch.max") <= 670);
+
+        long p50 = (Long) attribute("recommendationsNanos.p50");
+        long p99 = (Long) attribute("recommendationsNanos.p99");
+        long max = (Long) attribute("recommendationsNanos.max");
+        Assert.assertTrue(p50 > 0 && p50 <= p99 && p99 <= max);
+    }
+
+    @Test
+    public void testAttributesDescribed() throws Exception {
+        new MovieRecommender();
+        Set<String> names = new HashSet<>();
+        for (MBeanAttributeInfo info: server().getMBeanInfo(new ObjectName(OBJECT_NAME)).getAttributes()) {
+            names.add(info.getName());
+        }
+        Assert.assertTrue(names.contains("ratingsLoaded"));
+        Assert.assertTrue(names.contains("modelBytes"));
+        Assert.assertTrue(names.contains("loadDataNanos.p99"));
+        Assert.assertTrue(names.contains("recommendationsNanos.mean"));
+    }
+
+    /**
+     * Reads an attribute of the metrics MBean
+     * @param name name of the attribute
+     * @return value of the attribute
+     * @throws Exception if the attribute can not be read
+     */
+    private static Object attribute(String name) throws Exception {
+        return server().getAttribute(new ObjectName(OBJECT_NAME), name);
+    }
+
+    /**
+     * Returns the platform MBean server
+     * @return MBean server
+     */
+    private static MBeanServer server() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+}
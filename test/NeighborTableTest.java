@@ -0,0 +1,110 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/** Test file for the neighbor table computed by the offline all-pairs job.
+ *  Recommendations that use the table must be the same as the ones that
+ *  compare the user with all the other users, whatever the number of threads,
+ *  and also after the table is saved and loaded again.
+ *  */
+public class NeighborTableTest {
+
+    @Test
+    public void testSameAsScan() throws IOException {
+        MovieRecommender scan = new MovieRecommender();
+        scan.loadData("movies.csv", "ratings.csv");
+
+        Path table = Files.createTempFile("neighbors", ".bin");
+        try {
+            int[] threadCounts = {1, 4};
+            for (int threads: threadCounts) {
+                MovieRecommender precomputed = new MovieRecommender();
+                precomputed.loadData("movies.csv", "ratings.csv");
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    precomputed.setSimilarityPool(pool);
+                    precomputed.computeNeighborTable(10, table.toString());
+                    precomputed.setSimilarityPool(null);
+                } finally {
+                    pool.shutdown();
+                }
+                checkSame(scan, precomputed, threads + " threads");
+            }
+
+            MovieRecommender loaded = new MovieRecommender();
+            loaded.loadData("movies.csv", "ratings.csv");
+            loaded.loadNeighborTable(table.toString());
+            checkSame(scan, loaded, "loaded table");
+        } finally {
+            Files.delete(table);
+        }
+    }
+
+    @Test
+    public void testTruncatedTableRejected() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Path table = Files.createTempFile("neighbors", ".bin");
+        Path expectedFile = Files.createTempFile("scan", ".txt");
+        Path actualFile = Files.createTempFile("table", ".txt");
+        try {
+            recommender.findRecommendations(1, 10, expectedFile.toString());
+            recommender.computeNeighborTable(10, table.toString());
+            byte[] bytes = Files.readAllBytes(table);
+
+            // the truncated table is not loaded, so the computed one is still used
+            Files.write(table, Arrays.copyOf(bytes, bytes.length / 2));
+            recommender.loadNeighborTable(table.toString());
+            recommender.findRecommendations(1, 10, actualFile.toString());
+            Assert.assertEquals(Files.readAllLines(expectedFile), Files.readAllLines(actualFile));
+
+            // a negative number of rows
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(8, -1);
+            Files.write(table, bytes);
+            recommender.loadNeighborTable(table.toString());
+            recommender.findRecommendations(1, 10, actualFile.toString());
+            Assert.assertEquals(Files.readAllLines(expectedFile), Files.readAllLines(actualFile));
+        } finally {
+            Files.delete(table);
+            Files.delete(expectedFile);
+            Files.delete(actualFile);
+        }
+    }
+
+    /**
+     * Fails the test if the two recommenders do not give the same recommendations
+     * @param expected recommender without a neighbor table
+     * @param actual recommender with a neighbor table
+     * @param message description of the table, for the error message
+     * @throws IOException if the temporary files can not be created
+     */
+    private void checkSame(MovieRecommender expected, MovieRecommender actual, String message) throws IOException {
+        Path expectedFile = Files.createTempFile("scan", ".txt");
+        Path actualFile = Files.createTempFile("table", ".txt");
+        try {
+            for (int userId = 1; userId <= 671; userId += 7) {
+                expected.findRecommendations(userId, 10, expectedFile.toString());
+                actual.findRecommendations(userId, 10, actualFile.toString());
+                Assert.assertEquals("Recommendations for user " + userId + ", " + message,
+                        Files.readAllLines(expectedFile), Files.readAllLines(actualFile));
+
+                expected.findNeighborhoodRecommendations(userId, 10, 10, expectedFile.toString());
+                actual.findNeighborhoodRecommendations(userId, 10, 10, actualFile.toString());
+                Assert.assertEquals("Neighborhood recommendations for user " + userId + ", " + message,
+                        Files.readAllLines(expectedFile), Files.readAllLines(actualFile));
+            }
+        } finally {
+            Files.delete(expectedFile);
+            Files.delete(actualFile);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import movieRecommender.MovieRecommender;
+import movieRecommender.UserNode;
+import movieRecommender.UsersList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** Test file for the k-nearest-neighbors recommendations.
+ *  */
+public class NeighborhoodTest {
+
+    @Test
+    public void testMostSimilarUsers() {
+        UsersList users = new UsersList();
+        addData(users, 1, UsersListTest.MOVIES1, UsersListTest.RATINGS1);
+        double[] ratings2 = {5, 4, 4};
+        addData(users, 2, UsersListTest.MOVIES2, ratings2);
+        addData(users, 3, UsersListTest.MOVIES3, UsersListTest.RATINGS3);
+        addData(users, 4, UsersListTest.MOVIES1, UsersListTest.RATINGS1);
+
+        double[] scores = new double[3];
+        UserNode[] similar = users.findMostSimilarUsers(1, 3, scores);
+
+        Assert.assertSame(users.findMostSimilarUser(1), similar[0]);
+        Assert.assertEquals(4, similar[0].getId()); // same ratings as user 1
+        Assert.assertEquals(1.0, scores[0], 0.0001);
+        for (int i = 1; i < similar.length; i++) {
+            Assert.assertTrue(scores[i] > 0);
+            Assert.assertTrue(scores[i] <= scores[i - 1]);
+        }
+    }
+
+    @Test
+    public void testNeighborhoodRecommend() throws IOException {
+        Path dir = Files.createTempDirectory("neighborhood");
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        Path output = dir.resolve("recommendations");
+        try {
+            Files.write(movies, Arrays.asList("movieId,title,genres",
+                    "1,One,Drama", "2,Two,Drama", "3,Three,Drama", "4,Four,Drama", "5,Five,Drama",
+                    "9,Nine,Drama"));
+            // every user has a mean rating of 3; over movies 1 to 3, user 2 has a similarity
+            // of 1 with user 1, user 3 of 0.5 and user 4 of -1
+            Files.write(ratings, Arrays.asList("userId,movieId,rating,timestamp",
+                    "1,1,5.0,0", "1,2,3.0,0", "1,3,1.0,0",
+                    "2,1,5.0,0", "2,2,3.0,0", "2,3,1.0,0", "2,4,5.0,0", "2,5,2.0,0", "2,9,2.0,0",
+                    "3,1,5.0,0", "3,2,1.0,0", "3,3,3.0,0", "3,4,1.0,0", "3,9,5.0,0",
+                    "4,1,1.0,0", "4,2,3.0,0", "4,3,5.0,0", "4,5,5.0,0", "4,9,1.0,0"));
+
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData(movies.toString(), ratings.toString());
+            recommender.findNeighborhoodRecommendations(1, 2, 10, output.toString());
+
+            // with users 2 and 3, the predicted ratings of the movies user 1 has not seen are
+            //  Four: 3 + (1 * (5 - 3) + 0.5 * (1 - 3)) / 1.5 = 3.67
+            //  Nine: 3 + (1 * (2 - 3) + 0.5 * (5 - 3)) / 1.5 = 3
+            //  Five: 3 + (1 * (2 - 3)) / 1 = 2
+            // (an unweighted mean would put Nine first, and user 4 is not one of the 2 neighbors)
+            Assert.assertEquals(Arrays.asList("Four", "Nine", "Five"), Files.readAllLines(output));
+
+            recommender.findNeighborhoodRecommendations(1, 2, 2, output.toString());
+            Assert.assertEquals(Arrays.asList("Four", "Nine"), Files.readAllLines(output));
+        } finally {
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(ratings);
+            Files.deleteIfExists(movies);
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Insert a given data for a given user id into the usersList
+     * @param users
+     * @param userId
+     * @param movies
+     * @param ratings
+     */
+    private void addData(UsersList users, int userId, int[] movies, double[] ratings) {
+        for (int i = 0; i < movies.length; i++) {
+            users.insert(userId, movies[i], ratings[i]);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Test file for loading the data with several threads.
+ *  The recommendations must be the same as with the sequential loadData,
+ *  whatever the number of threads.
+ *  */
+public class ParallelLoadTest {
+
+    @Test
+    public void testRecommendParallel() {
+        int[] threadCounts = {1, 2, 3, 8};
+        for (int threads: threadCounts) {
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData("movies.csv", "ratings.csv", threads);
+            String filenameRecommendations = "test" + File.separator + "recommendations";
+            recommender.findRecommendations(3, 5, filenameRecommendations);
+
+            Path actual = Paths.get(filenameRecommendations);
+            Path expected = Paths.get("test" + File.separator + "expectedRecommendations");
+            checkFiles(expected, actual, threads);
+        }
+    }
+
+    @Test
+    public void testSameAsSequential() throws IOException {
+        MovieRecommender sequential = new MovieRecommender();
+        sequential.loadData("movies.csv", "ratings.csv");
+        MovieRecommender parallel = new MovieRecommender();
+        parallel.loadData("movies.csv", "ratings.csv", 5);
+
+        Path expected = Files.createTempFile("sequential", ".txt");
+        Path actual = Files.createTempFile("parallel", ".txt");
+        try {
+            int[] users = {1, 15, 100, 547, 671};
+            for (int userId: users) {
+                sequential.findAntiRecommendations(userId, 10, expected.toString());
+                parallel.findAntiRecommendations(userId, 10, actual.toString());
+                checkFiles(expected, actual, 5);
+            }
+        } finally {
+            Files.delete(expected);
+            Files.delete(actual);
+        }
+    }
+
+    /**
+     * Fails the test if the two files are different
+     * @param expected expected output
+     * @param actual output of the parallel loader
+     * @param threads number of threads used, for the error message
+     */
+    private void checkFiles(Path expected, Path actual, int threads) {
+        int count = 0;
+        try {
+            count = TestUtils.checkFiles(expected, actual);
+        } catch (IOException e) {
+            Assert.fail(" File check failed: " + e.getMessage());
+        }
+        if (count <= 0)
+            Assert.fail(" File check failed with " + threads + " threads, files are different");
+    }
+}
@@ -0,0 +1,71 @@
+import movieRecommender.UserNode;
+import movieRecommender.UsersList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/** Test file for the parallel findMostSimilarUser and the one that only looks at users
+ *  with movies in common. Both must find the same user as the sequential scan of all
+ *  users, whatever the number of threads.
+ *  */
+public class ParallelSimilarityTest {
+
+    @Test
+    public void testSameAsSequential() throws IOException {
+        UsersList users = loadUsers();
+
+        int[] threadCounts = {1, 3, 8};
+        for (int threads: threadCounts) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (int userId = 1; userId <= users.size(); userId += 5) {
+                    UserNode expected = users.findMostSimilarUser(userId);
+                    UserNode actual = users.findMostSimilarUser(userId, pool);
+                    Assert.assertSame("Most similar user for user " + userId + " with " + threads + " threads",
+                            expected, actual);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testCandidatesSameAsAllUsers() throws IOException {
+        UsersList users = loadUsers();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int userId = 1; userId <= users.size(); userId += 3) {
+                UserNode expected = users.findMostSimilarUser(userId);
+                Assert.assertSame("Most similar user for user " + userId,
+                        expected, users.findMostSimilarUser(userId, 2));
+                Assert.assertSame("Most similar user for user " + userId + " in parallel",
+                        expected, users.findMostSimilarUser(userId, 2, pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Loads ratings.csv into a compacted UsersList
+     * @return UsersList with all ratings
+     * @throws IOException if the file can not be read
+     */
+    private UsersList loadUsers() throws IOException {
+        UsersList users = new UsersList();
+        try (BufferedReader reader = new BufferedReader(new FileReader("ratings.csv"))) {
+            String line = reader.readLine(); // header
+            while ((line = reader.readLine()) != null) {
+                String[] info = line.split(",");
+                users.insert(Integer.parseInt(info[0]), Integer.parseInt(info[1]), Double.parseDouble(info[2]));
+            }
+        }
+        users.compact();
+        return users;
+    }
+}
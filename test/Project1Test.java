@@ -1,9 +1,19 @@
+import movieRecommender.SimilarityKernelTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({MovieRatingsListTest.class, UsersListTest.class, MovieRecommenderTest.class})
+@SuiteClasses({MovieRatingsListTest.class, UsersListTest.class, MovieRecommenderTest.class,
+        CompactUsersListTest.class, ParallelLoadTest.class,
+        SnapshotTest.class, ComputeSimilarityTest.class, ParallelSimilarityTest.class,
+        NeighborhoodTest.class, NeighborTableTest.class,
+        SimilarityCacheTest.class, ResultCacheTest.class,
+        BatchRecommendationsTest.class, SeenMoviesTest.class,
+        ItemRecommendationsTest.class, FactorModelTest.class,
+        LshIndexTest.class, DatasetGeneratorTest.class,
+        MetricsTest.class, QueryEventsTest.class, IngestionTest.class,
+        SimilarityKernelTest.class})
 public class Project1Test {
 	/*
 	 * Project 1 test file
@@ -0,0 +1,92 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Test file for the Flight Recorder events of a recommendation query.
+ *  Records a query in this JVM and reads the events back from the recording.
+ *  */
+public class QueryEventsTest {
+    private static final String[] PHASES = {"Query", "UserLookup", "SimilarUserSearch", "SimilarityScan",
+            "MovieSelection", "SeenFilter", "TitleLookup", "ResultWrite"};
+
+    @Test
+    public void testPhasesRecorded() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+        recommender.setResultCacheSize(0);
+        String output = "test" + File.separator + "tracedRecommendations";
+        Path dump = Files.createTempFile("query", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            for (String phase: PHASES) {
+                recording.enable("movieRecommender." + phase);
+            }
+            recording.start();
+            recommender.findRecommendations(3, 5, output);
+            recording.stop();
+            recording.dump(dump);
+
+            Map<String, RecordedEvent> events = new HashMap<>();
+            List<RecordedEvent> recorded = RecordingFile.readAllEvents(dump);
+            for (RecordedEvent event: recorded) {
+                events.put(event.getEventType().getName(), event);
+            }
+            for (String phase: PHASES) {
+                Assert.assertTrue("no " + phase + " event", events.containsKey("movieRecommender." + phase));
+            }
+
+            RecordedEvent query = events.get("movieRecommender.Query");
+            Assert.assertEquals(3, query.getInt("userId"));
+            Assert.assertEquals("recommend", query.getString("kind"));
+            Assert.assertEquals(5, query.getInt("requested"));
+
+            List<String> lines = Files.readAllLines(new File(output).toPath());
+            Assert.assertEquals(lines.size(), query.getInt("results"));
+            RecordedEvent write = events.get("movieRecommender.ResultWrite");
+            Assert.assertEquals(lines.size(), write.getInt("lines"));
+            Assert.assertEquals(new File(output).length(), write.getLong("bytes"));
+
+            RecordedEvent search = events.get("movieRecommender.SimilarUserSearch");
+            Assert.assertEquals("scan", search.getString("method"));
+            Assert.assertTrue(search.getInt("overlap") >= 2);
+            Assert.assertTrue(events.get("movieRecommender.SimilarityScan").getInt("candidates") > 0);
+        } finally {
+            new File(output).delete();
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    public void testNothingRecordedWhenDisabled() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+        String output = "test" + File.separator + "tracedRecommendations";
+        Path dump = Files.createTempFile("query", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.disable("movieRecommender.Query");
+            recording.start();
+            recommender.findAntiRecommendations(3, 5, output);
+            recording.stop();
+            recording.dump(dump);
+
+            for (RecordedEvent event: RecordingFile.readAllEvents(dump)) {
+                Assert.assertNotEquals("movieRecommender.Query", event.getEventType().getName());
+            }
+        } finally {
+            new File(output).delete();
+            Files.deleteIfExists(dump);
+        }
+    }
+}
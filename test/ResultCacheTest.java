@@ -0,0 +1,90 @@
+import movieRecommender.MovieRatingsList;
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/** Test file for the cache of recommendation results in MovieRecommender.
+ *  A repeated query must give the same file from the cache, and a change to
+ *  any ratings of the model must make the next query compute the result again.
+ *  */
+public class ResultCacheTest {
+
+    @Test
+    public void testRepeatedQueries() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Path file = Files.createTempFile("recommendations", ".txt");
+        try {
+            recommender.findRecommendations(3, 5, file.toString());
+            List<String> first = Files.readAllLines(file);
+            recommender.findRecommendations(3, 5, file.toString());
+            Assert.assertEquals(first, Files.readAllLines(file));
+            Assert.assertEquals(1, recommender.getResultCacheHits());
+            Assert.assertEquals(1, recommender.getResultCacheMisses());
+
+            // a different num or kind is a different query
+            recommender.findRecommendations(3, 6, file.toString());
+            recommender.findAntiRecommendations(3, 5, file.toString());
+            Assert.assertEquals(1, recommender.getResultCacheHits());
+            Assert.assertEquals(3, recommender.getResultCacheMisses());
+
+            // ratings that are not part of the model do not invalidate the cached results
+            new MovieRatingsList().insertByRating(1, 5.0);
+            recommender.findRecommendations(3, 5, file.toString());
+            Assert.assertEquals(2, recommender.getResultCacheHits());
+
+            // any change to the ratings of the model does, even to the same value
+            recommender.addRatings(new int[] {3}, new int[] {60}, new double[] {3.0});
+            recommender.findRecommendations(3, 5, file.toString());
+            Assert.assertEquals(first, Files.readAllLines(file));
+            Assert.assertEquals(2, recommender.getResultCacheHits());
+            Assert.assertEquals(4, recommender.getResultCacheMisses());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRepeatedAntiRecommendations() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+
+        Path file = Files.createTempFile("antiRecommendations", ".txt");
+        try {
+            // reading the worst ranked movies must not count as a change to the ratings
+            recommender.findAntiRecommendations(3, 5, file.toString());
+            List<String> first = Files.readAllLines(file);
+            recommender.findAntiRecommendations(3, 5, file.toString());
+            recommender.findAntiRecommendations(3, 5, file.toString());
+            Assert.assertEquals(first, Files.readAllLines(file));
+            Assert.assertEquals(2, recommender.getResultCacheHits());
+            Assert.assertEquals(1, recommender.getResultCacheMisses());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCacheOff() throws IOException {
+        MovieRecommender recommender = new MovieRecommender();
+        recommender.loadData("movies.csv", "ratings.csv");
+        recommender.setResultCacheSize(0);
+
+        Path file = Files.createTempFile("antiRecommendations", ".txt");
+        try {
+            recommender.findAntiRecommendations(3, 5, file.toString());
+            List<String> first = Files.readAllLines(file);
+            recommender.findAntiRecommendations(3, 5, file.toString());
+            Assert.assertEquals(first, Files.readAllLines(file));
+            Assert.assertEquals(0, recommender.getResultCacheHits());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/** Test file for the filter of movies the user has already seen.
+ *  A movie the user has seen must be left out of the recommendations
+ *  without hiding the unseen movies that follow it.
+ *  */
+public class SeenMoviesTest {
+
+    @Test
+    public void testSeenMovieSkipped() throws IOException {
+        Path dir = Files.createTempDirectory("seen");
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        Path output = dir.resolve("recommendations");
+        try {
+            Files.write(movies, Arrays.asList("movieId,title,genres",
+                    "1,One,Drama", "2,Two,Drama", "3,Three,Drama", "4,Four,Drama", "5,Five,Drama"));
+            // user 2 is the most similar user of user 1 and gave 5 to movies 1, 2 and 3;
+            // user 1 has already seen movie 3, which comes first in user 2's list
+            Files.write(ratings, Arrays.asList("userId,movieId,rating,timestamp",
+                    "1,3,5.0,0", "1,4,1.0,0", "1,5,3.0,0",
+                    "2,1,5.0,0", "2,2,5.0,0", "2,3,5.0,0", "2,4,1.0,0", "2,5,3.0,0"));
+
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData(movies.toString(), ratings.toString());
+            recommender.findRecommendations(1, 3, output.toString());
+
+            List<String> lines = Files.readAllLines(output);
+            Assert.assertEquals(Arrays.asList("Two", "One"), lines);
+
+            recommender.findAntiRecommendations(1, 3, output.toString());
+            Assert.assertTrue(Files.readAllLines(output).isEmpty());
+        } finally {
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(ratings);
+            Files.deleteIfExists(movies);
+            Files.delete(dir);
+        }
+    }
+}
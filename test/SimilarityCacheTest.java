@@ -0,0 +1,117 @@
+import movieRecommender.SimilarityCache;
+import movieRecommender.UserNode;
+import movieRecommender.UsersList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** Test file for the cache of similarity scores.
+ *  Queries through the cache must give the same results as without it, also after
+ *  ratings change and when the cache is too small to hold every pair.
+ *  */
+public class SimilarityCacheTest {
+
+    @Test
+    public void testHitsOnRepeatedQueries() {
+        UsersList users = initializeUsers();
+        SimilarityCache cache = new SimilarityCache(1024);
+        users.setSimilarityCache(cache);
+
+        UserNode first = users.findMostSimilarUser(1);
+        Assert.assertEquals(0, cache.hits());
+        Assert.assertEquals(2, cache.misses());
+
+        // the pairs are symmetric, so user 3 finds (1, 3) in the cache
+        users.findMostSimilarUser(3);
+        Assert.assertEquals(1, cache.hits());
+
+        Assert.assertSame(first, users.findMostSimilarUser(1));
+        Assert.assertEquals(3, cache.hits());
+        Assert.assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testChangesInvalidate() {
+        UsersList cached = initializeUsers();
+        SimilarityCache cache = new SimilarityCache(1024);
+        cached.setSimilarityCache(cache);
+        UsersList uncached = initializeUsers();
+
+        Assert.assertEquals(uncached.findMostSimilarUser(1).getId(), cached.findMostSimilarUser(1).getId());
+
+        change(cached);
+        change(uncached);
+        long misses = cache.misses();
+
+        UserNode expected = uncached.findMostSimilarUser(1);
+        UserNode actual = cached.findMostSimilarUser(1);
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(misses + 2, cache.misses());
+    }
+
+    @Test
+    public void testSmallCache() {
+        UsersList users = new UsersList();
+        for (int userId = 1; userId <= 40; userId++) {
+            for (int movieId = 1; movieId <= 10; movieId++) {
+                users.insert(userId, movieId, 1 + (userId * movieId * 7) % 9 / 2.0);
+            }
+        }
+        users.compact();
+
+        UserNode[] expected = new UserNode[41];
+        for (int userId = 1; userId <= 40; userId++) {
+            expected[userId] = users.findMostSimilarUser(userId);
+        }
+
+        SimilarityCache cache = new SimilarityCache(16);
+        users.setSimilarityCache(cache);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 2; round++) {
+                for (int userId = 1; userId <= 40; userId++) {
+                    Assert.assertSame(expected[userId], users.findMostSimilarUser(userId, 0, pool));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertTrue(cache.evictions() > 0);
+        Assert.assertEquals(2 * 40 * 39, cache.hits() + cache.misses());
+    }
+
+    /**
+     * Changes the ratings of users 1 and 3 with setRating and insert
+     * @param users UsersList created by initializeUsers
+     */
+    private void change(UsersList users) {
+        users.get(1).getMovieRatings().setRating(1, 1.0);
+        users.insert(3, 6, 5.0);
+    }
+
+    /**
+     * Creates the users list used in UsersListTest
+     * @return UsersList with three users
+     */
+    private UsersList initializeUsers() {
+        UsersList users = new UsersList();
+        addData(users, 1, UsersListTest.MOVIES1, UsersListTest.RATINGS1);
+        addData(users, 2, UsersListTest.MOVIES2, UsersListTest.RATINGS2);
+        addData(users, 3, UsersListTest.MOVIES3, UsersListTest.RATINGS3);
+        return users;
+    }
+
+    /**
+     * Insert a given data for a given user id into the usersList
+     * @param users
+     * @param userId
+     * @param movies
+     * @param ratings
+     */
+    private void addData(UsersList users, int userId, int[] movies, double[] ratings) {
+        for (int i = 0; i < movies.length; i++) {
+            users.insert(userId, movies[i], ratings[i]);
+        }
+    }
+}
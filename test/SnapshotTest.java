@@ -0,0 +1,122 @@
+import movieRecommender.MovieRecommender;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/** Test file for saving a loaded model to a snapshot file and opening it again.
+ *  A recommender opened from a snapshot must give the same results as one
+ *  loaded from the csv files.
+ *  */
+public class SnapshotTest {
+
+    @Test
+    public void testRecommendFromSnapshot() throws IOException {
+        Path snapshot = Files.createTempFile("model", ".snapshot");
+        try {
+            MovieRecommender original = new MovieRecommender();
+            original.loadData("movies.csv", "ratings.csv");
+            original.saveSnapshot(snapshot.toString());
+
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadSnapshot(snapshot.toString());
+
+            String filenameRecommendations = "test" + File.separator + "recommendations";
+            recommender.findRecommendations(3, 5, filenameRecommendations);
+            checkFiles(Paths.get("test" + File.separator + "expectedRecommendations"),
+                    Paths.get(filenameRecommendations));
+
+            String filenameAntiRecommendations = "test" + File.separator + "antiRecommendations";
+            recommender.findAntiRecommendations(3, 5, filenameAntiRecommendations);
+            checkFiles(Paths.get("test" + File.separator + "expectedAntiRecommendations"),
+                    Paths.get(filenameAntiRecommendations));
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void testLoadedModelRejected() throws IOException {
+        Path snapshot = Files.createTempFile("model", ".snapshot");
+        try {
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadData("movies.csv", "ratings.csv");
+            recommender.saveSnapshot(snapshot.toString());
+            int[] userIds = recommender.getUserIds();
+
+            try {
+                recommender.loadSnapshot(snapshot.toString());
+                Assert.fail("a snapshot was opened into a loaded model");
+            } catch (IllegalStateException e) {
+                // expected, the loaded users are left as they were
+            }
+            Assert.assertArrayEquals(userIds, recommender.getUserIds());
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void testTruncatedSnapshotRejected() throws IOException {
+        Path snapshot = Files.createTempFile("model", ".snapshot");
+        try {
+            MovieRecommender original = new MovieRecommender();
+            original.loadData("movies.csv", "ratings.csv");
+            original.saveSnapshot(snapshot.toString());
+            byte[] bytes = Files.readAllBytes(snapshot);
+
+            // cut in the rating columns, and in the titles
+            for (int length: new int[] {bytes.length / 2, bytes.length - 3}) {
+                Files.write(snapshot, Arrays.copyOf(bytes, length));
+                MovieRecommender recommender = new MovieRecommender();
+                recommender.loadSnapshot(snapshot.toString());
+                Assert.assertEquals(0, recommender.getUserIds().length);
+            }
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void testNegativeCountRejected() throws IOException {
+        Path snapshot = Files.createTempFile("model", ".snapshot");
+        try {
+            MovieRecommender original = new MovieRecommender();
+            original.loadData("movies.csv", "ratings.csv");
+            original.saveSnapshot(snapshot.toString());
+            byte[] bytes = Files.readAllBytes(snapshot);
+
+            // the number of ratings, after the magic, the version and the number of users
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(12, -1);
+            Files.write(snapshot, bytes);
+            MovieRecommender recommender = new MovieRecommender();
+            recommender.loadSnapshot(snapshot.toString());
+            Assert.assertEquals(0, recommender.getUserIds().length);
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    /**
+     * Fails the test if the two files are different
+     * @param expected expected output
+     * @param actual output of the recommender opened from a snapshot
+     */
+    private void checkFiles(Path expected, Path actual) {
+        int count = 0;
+        try {
+            count = TestUtils.checkFiles(expected, actual);
+        } catch (IOException e) {
+            Assert.fail(" File check failed: " + e.getMessage());
+        }
+        if (count <= 0)
+            Assert.fail(" File check failed, files are different");
+    }
+}
@@ -0,0 +1,100 @@
+package movieRecommender;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/** Test file for the kernels of SimilarityKernel, which are package-private, so the test
+ *  is in the movieRecommender package. The branch-free and galloping pearson must give
+ *  the same results as the plain merge, and dot the same results as the plain loop.
+ *  The Vector API kernel (vector/VectorKernel.java) is not compiled with the module:
+ *  dot only runs it when its classes and jdk.incubator.vector are added (see
+ *  vector/README.md), so without them this test only covers the plain loop.
+ *  */
+public class SimilarityKernelTest {
+
+    @Test
+    public void testPearsonSameAsMerge() {
+        Random random = new Random(545);
+        for (int i = 0; i < 500; i++) {
+            // similar sizes use the merge, very different sizes gallop through the longer list
+            int xLength = random.nextInt(60);
+            int yLength = random.nextBoolean() ? random.nextInt(60) : random.nextInt(2000);
+            int[] xIds = sortedIds(random, xLength, 3000);
+            int[] yIds = sortedIds(random, yLength, 3000);
+            float[] xRatings = ratings(random, xLength);
+            float[] yRatings = ratings(random, yLength);
+            int xFrom = xLength == 0 ? 0 : random.nextInt(xLength);
+            int yFrom = yLength == 0 ? 0 : random.nextInt(yLength);
+
+            double expected = SimilarityKernel.mergeScalar(xIds, xRatings, xFrom, xLength, yIds, yRatings, yFrom, yLength);
+            double actual = SimilarityKernel.pearson(xIds, xRatings, xFrom, xLength, yIds, yRatings, yFrom, yLength);
+            double swapped = SimilarityKernel.pearson(yIds, yRatings, yFrom, yLength, xIds, xRatings, xFrom, xLength);
+            if (Double.isNaN(expected)) {
+                Assert.assertTrue(Double.isNaN(actual));
+                Assert.assertTrue(Double.isNaN(swapped));
+            } else {
+                Assert.assertEquals(expected, actual, 1e-12);
+                Assert.assertEquals(expected, swapped, 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testDotSameAsLoop() {
+        Random random = new Random(545);
+        // every length up to 70, so also lengths that are not a multiple of any lane count
+        for (int length = 0; length <= 70; length++) {
+            for (int i = 0; i < 20; i++) {
+                int aFrom = random.nextInt(5);
+                int bFrom = random.nextInt(5);
+                float[] a = new float[aFrom + length];
+                float[] b = new float[bFrom + length];
+                double magnitude = 0;
+                for (int k = 0; k < length; k++) {
+                    a[aFrom + k] = (float) random.nextGaussian();
+                    b[bFrom + k] = (float) random.nextGaussian();
+                    magnitude += Math.abs(a[aFrom + k] * b[bFrom + k]);
+                }
+
+                float expected = SimilarityKernel.dotScalar(a, aFrom, b, bFrom, length);
+                float actual = SimilarityKernel.dot(a, aFrom, b, bFrom, length);
+                // the vector kernel adds the products in another order
+                Assert.assertEquals("length " + length, expected, actual, 1e-5 * magnitude + 1e-6);
+            }
+        }
+    }
+
+    /**
+     * Returns distinct random movie ids, sorted from lowest to highest
+     * @param random generator to use
+     * @param length number of ids
+     * @param maxId largest possible id
+     * @return sorted ids
+     */
+    private int[] sortedIds(Random random, int length, int maxId) {
+        int[] ids = new int[length];
+        int next = 0;
+        for (int i = 0; i < length; i++) {
+            // leave room for the ids still to come
+            next += 1 + random.nextInt(Math.max(1, (maxId - next) / (length - i)));
+            ids[i] = next;
+        }
+        return ids;
+    }
+
+    /**
+     * Returns random ratings from 0.5 to 5, in steps of 0.5
+     * @param random generator to use
+     * @param length number of ratings
+     * @return ratings
+     */
+    private float[] ratings(Random random, int length) {
+        float[] ratings = new float[length];
+        for (int i = 0; i < length; i++) {
+            ratings[i] = 0.5f * (1 + random.nextInt(10));
+        }
+        return ratings;
+    }
+}
@@ -0,0 +1,62 @@
+package movieRecommender;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorKernel. The dot product of SimilarityKernel written with the incubating Vector
+ * API (jdk.incubator.vector, JDK 16 or later), so it runs as SIMD fused multiply-adds of
+ * a chosen width whatever the JIT compiler does with the plain loop. The lanes keep
+ * partial sums that are added together at the end, so the result can differ from the
+ * scalar loop in the last bits.
+ *
+ * The size of the vectors is the one the CPU prefers, or the one set with
+ * -DmovieRecommender.vectorBits (64, 128, 256 or 512). It is a constant, as the JIT
+ * compiler only turns vector operations into SIMD instructions for a constant species.
+ *
+ * SimilarityKernel loads this class by reflection and falls back to the scalar loop when
+ * it is not on the class path or the module is not added (see vector/README.md).
+ */
+final class VectorKernel implements SimilarityKernel.Dot {
+    private static final int BITS = Integer.getInteger("movieRecommender.vectorBits", 0);
+    private static final VectorSpecies<Float> SPECIES = BITS == 0 ? FloatVector.SPECIES_PREFERRED
+            : VectorSpecies.of(float.class, VectorShape.forBitSize(BITS));
+
+    /**
+     * Computes the dot product of two ranges of floats
+     * @param a first array
+     * @param aFrom first position in a
+     * @param b second array
+     * @param bFrom first position in b
+     * @param length number of values to multiply
+     * @return dot product
+     */
+    @Override
+    public float dot(float[] a, int aFrom, float[] b, int bFrom, int length) {
+
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, a, aFrom + k);
+            FloatVector y = FloatVector.fromArray(SPECIES, b, bFrom + k);
+            sum = x.fma(y, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; k < length; k++) {
+            result += a[aFrom + k] * b[bFrom + k];
+        }
+        return result;
+    }
+
+    /**
+     * Describes the kernel
+     * @return the size of its vectors
+     */
+    @Override
+    public String toString() {
+        return "vector " + SPECIES.vectorBitSize() + "-bit";
+    }
+}